@@ -0,0 +1,121 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * The key of the encrypted database, see {@link EncryptedOpenHelperFactory}.
+ * <p>
+ * It is a random 256-bit key, generated the first time it is needed and stored in the
+ * {@value #PREFERENCES} preferences encrypted with an AES key of the Android Keystore, which
+ * never leaves it. Neither of them is backed up (see {@code res/xml/backup_rules.xml}): a
+ * database restored on another device can't be decrypted there.
+ */
+final class DatabaseKey {
+
+    static final String PREFERENCES = "database_key";
+
+    private static final String WRAPPED_KEY = "wrapped_key";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEYSTORE_ALIAS = "recipe_database";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_BYTES = 32;
+    private static final int GCM_TAG_BITS = 128;
+
+    private DatabaseKey() {
+    }
+
+    /**
+     * Whether the key has already been generated on this device.
+     */
+    static boolean exists(Context context) {
+        return preferences(context).contains(WRAPPED_KEY);
+    }
+
+    /**
+     * Returns the key, generating it the first time. It does I/O and Keystore operations, so it
+     * should not be called on the UI thread.
+     */
+    static byte[] get(Context context) {
+        SharedPreferences preferences = preferences(context);
+        try {
+            SecretKey wrappingKey = wrappingKey();
+            String wrapped = preferences.getString(WRAPPED_KEY, null);
+            if (wrapped != null) {
+                return unwrap(wrappingKey, Base64.decode(wrapped, Base64.NO_WRAP));
+            }
+            byte[] key = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(key);
+            // Written synchronously: nothing may be encrypted with a key that could be lost
+            if (!preferences.edit()
+                    .putString(WRAPPED_KEY, Base64.encodeToString(wrap(wrappingKey, key), Base64.NO_WRAP))
+                    .commit()) {
+                throw new IllegalStateException("Can't store the database key");
+            }
+            return key;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Can't get the database key", e);
+        }
+    }
+
+    private static SharedPreferences preferences(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    private static SecretKey wrappingKey() throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(KEYSTORE_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEYSTORE_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    /**
+     * Encrypts the key, returning the IV followed by the encrypted bytes.
+     */
+    private static byte[] wrap(SecretKey wrappingKey, byte[] key) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey);
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(key);
+        return ByteBuffer.allocate(1 + iv.length + encrypted.length)
+                .put((byte) iv.length)
+                .put(iv)
+                .put(encrypted)
+                .array();
+    }
+
+    private static byte[] unwrap(SecretKey wrappingKey, byte[] wrapped) throws GeneralSecurityException {
+        ByteBuffer buffer = ByteBuffer.wrap(wrapped);
+        byte[] iv = new byte[buffer.get()];
+        buffer.get(iv);
+        byte[] encrypted = new byte[buffer.remaining()];
+        buffer.get(encrypted);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        return cipher.doFinal(encrypted);
+    }
+}
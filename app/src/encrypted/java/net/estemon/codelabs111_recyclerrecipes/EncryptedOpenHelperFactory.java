@@ -0,0 +1,217 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+import net.zetetic.database.sqlcipher.SQLiteConnection;
+import net.zetetic.database.sqlcipher.SQLiteDatabase;
+import net.zetetic.database.sqlcipher.SQLiteDatabaseHook;
+import net.zetetic.database.sqlcipher.SupportOpenHelperFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Opens {@link AppDatabase} encrypted at rest with SQLCipher, when the app is built with
+ * {@code -PencryptDatabase} (see {@link OpenHelperFactories}). It is only compiled in those builds,
+ * along with SQLCipher.
+ * <p>
+ * Every page is decrypted when SQLite reads it from the file, so the overhead on reads is kept
+ * low by:
+ * <ul>
+ *     <li>Passing the {@link DatabaseKey} as a raw key, which skips the key derivation (256k
+ *     PBKDF2 iterations) on every connection that is opened.</li>
+ *     <li>A page cache of {@value #CACHE_SIZE_KIB} KiB per connection: the cached pages are
+ *     kept decrypted, so the indices and the first pages of the list are decrypted once.</li>
+ *     <li>Turning off the memory wiping of SQLCipher, which zeroes every buffer it frees; the
+ *     process memory is not what this mode protects.</li>
+ * </ul>
+ * The cipher page size stays the default one, the same as the SQLite page size, so a page is
+ * decrypted in one go.
+ * <p>
+ * The database is opened the first time it is used, on the writer thread (see
+ * {@link AppDatabase#warmUp}), which also gets the key there. A plain database left by a build
+ * without encryption is encrypted in place at that moment.
+ */
+public class EncryptedOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private static final String TAG = "EncryptedDatabase";
+
+    static final int CACHE_SIZE_KIB = 8 * 1024;
+
+    // First bytes of an SQLite file that is not encrypted
+    private static final byte[] PLAIN_HEADER = "SQLite format 3\0".getBytes(StandardCharsets.US_ASCII);
+
+    private static final SQLiteDatabaseHook TUNING = new SQLiteDatabaseHook() {
+        @Override
+        public void preKey(SQLiteConnection connection) {
+        }
+
+        @Override
+        public void postKey(SQLiteConnection connection) {
+            connection.execute("PRAGMA cipher_memory_security = OFF", null, null);
+            // Negative sizes are in KiB instead of pages
+            connection.execute("PRAGMA cache_size = -" + CACHE_SIZE_KIB, null, null);
+        }
+    };
+
+    static {
+        System.loadLibrary("sqlcipher");
+    }
+
+    @NonNull
+    @Override
+    public SupportSQLiteOpenHelper create(@NonNull SupportSQLiteOpenHelper.Configuration configuration) {
+        return new LazyOpenHelper(configuration);
+    }
+
+    /**
+     * Whether the file is an SQLite database that is not encrypted.
+     */
+    static boolean isPlain(File file) throws IOException {
+        byte[] header = new byte[PLAIN_HEADER.length];
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read(header) == header.length && Arrays.equals(header, PLAIN_HEADER);
+        }
+    }
+
+    /**
+     * The key as an SQLCipher raw key: {@code x'<64 hex digits>'}.
+     */
+    private static byte[] rawKey(byte[] key) {
+        StringBuilder rawKey = new StringBuilder(key.length * 2 + 3).append("x'");
+        for (byte b : key) {
+            rawKey.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return rawKey.append('\'').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Prepares the database file, if there is one, before opening it with the key.
+     *
+     * @param keyExisted Whether the key existed before this process asked for it.
+     */
+    private static void prepare(Context context, String name, byte[] rawKey, boolean keyExisted) throws IOException {
+        File file = context.getDatabasePath(name);
+        if (!file.isFile()) {
+            return;
+        }
+        if (isPlain(file)) {
+            encrypt(file, rawKey);
+        } else if (!keyExisted) {
+            // Restored from a backup of another device, its key stayed there
+            Log.w(TAG, "Can't decrypt " + file + " without its key, starting a new database");
+            context.deleteDatabase(name);
+        }
+    }
+
+    /**
+     * Encrypts a plain database with {@code sqlcipher_export}, into a new file that then replaces it.
+     */
+    private static void encrypt(File file, byte[] rawKey) throws IOException {
+        long start = System.nanoTime();
+        File encrypted = new File(file.getPath() + "-encrypted");
+        //noinspection ResultOfMethodCallIgnored
+        encrypted.delete(); // Left by an earlier attempt that was interrupted
+        try (SQLiteDatabase plain = SQLiteDatabase.openOrCreateDatabase(file, "", null, null)) {
+            // Moves the WAL into the file and deletes it, so it can't be applied to the new file
+            query(plain, "PRAGMA journal_mode = DELETE");
+            int version = plain.getVersion();
+            plain.execSQL("ATTACH DATABASE ? AS encrypted KEY ?",
+                    new Object[]{encrypted.getPath(), new String(rawKey, StandardCharsets.US_ASCII)});
+            query(plain, "SELECT sqlcipher_export('encrypted')");
+            // Not copied by the export, Room reads the schema version from it
+            plain.execSQL("PRAGMA encrypted.user_version = " + version);
+            plain.execSQL("DETACH DATABASE encrypted");
+        }
+        if (!encrypted.renameTo(file)) {
+            throw new IOException("Can't move " + encrypted + " to " + file);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(file.getPath() + "-shm").delete();
+        Log.i(TAG, "Encrypted " + file + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    private static void query(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.moveToFirst();
+        }
+    }
+
+    /**
+     * Creates the SQLCipher helper when the database is first opened, so neither the key nor the
+     * file are touched while Room builds the database on the UI thread.
+     */
+    private static final class LazyOpenHelper implements SupportSQLiteOpenHelper {
+
+        private final Configuration configuration;
+
+        @Nullable
+        private SupportSQLiteOpenHelper delegate;
+        private boolean writeAheadLogging;
+
+        LazyOpenHelper(Configuration configuration) {
+            this.configuration = configuration;
+        }
+
+        private synchronized SupportSQLiteOpenHelper delegate() {
+            if (delegate == null) {
+                Context context = configuration.context;
+                boolean keyExisted = DatabaseKey.exists(context);
+                byte[] rawKey = rawKey(DatabaseKey.get(context));
+                if (configuration.name != null) {
+                    try {
+                        prepare(context, configuration.name, rawKey, keyExisted);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Can't encrypt " + configuration.name, e);
+                    }
+                }
+                delegate = new SupportOpenHelperFactory(rawKey, TUNING, writeAheadLogging).create(configuration);
+            }
+            return delegate;
+        }
+
+        @Nullable
+        @Override
+        public String getDatabaseName() {
+            return configuration.name;
+        }
+
+        @Override
+        public synchronized void setWriteAheadLoggingEnabled(boolean enabled) {
+            writeAheadLogging = enabled;
+            if (delegate != null) {
+                delegate.setWriteAheadLoggingEnabled(enabled);
+            }
+        }
+
+        @NonNull
+        @Override
+        public SupportSQLiteDatabase getWritableDatabase() {
+            return delegate().getWritableDatabase();
+        }
+
+        @NonNull
+        @Override
+        public SupportSQLiteDatabase getReadableDatabase() {
+            return delegate().getReadableDatabase();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (delegate != null) {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+/**
+ * The {@link SupportSQLiteOpenHelper.Factory} of {@link AppDatabase} in the builds with
+ * {@code -PencryptDatabase}. The builds without it compile the one of {@code src/plain} instead.
+ */
+final class OpenHelperFactories {
+
+    private OpenHelperFactories() {
+    }
+
+    /**
+     * Returns the factory that keeps the database encrypted at rest with SQLCipher.
+     */
+    @Nullable
+    static SupportSQLiteOpenHelper.Factory create() {
+        return new EncryptedOpenHelperFactory();
+    }
+}
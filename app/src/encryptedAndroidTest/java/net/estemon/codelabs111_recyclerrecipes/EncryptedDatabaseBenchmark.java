@@ -0,0 +1,151 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Read latency of the encrypted database ({@link EncryptedOpenHelperFactory}) against the plain
+ * one, with the same {@value #ROWS} recipes in both.
+ * <p>
+ * It runs on a device, where SQLCipher can be loaded:
+ * {@code ./gradlew connectedDebugAndroidTest
+ * -Pandroid.testInstrumentationRunnerArguments.class=net.estemon.codelabs111_recyclerrecipes.EncryptedDatabaseBenchmark}
+ * <p>
+ * The two databases are measured alternately, so both see the same state of the device, and
+ * the median of the encrypted one must stay within {@link #MAX_OVERHEAD} of the plain one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EncryptedDatabaseBenchmark {
+
+    private static final String TAG = "EncryptedDatabaseBenchmark";
+
+    private static final String PLAIN_NAME = "benchmark_plain.db";
+    private static final String ENCRYPTED_NAME = "benchmark_encrypted.db";
+
+    private static final int ROWS = 10_000;
+    private static final int WARM_UPS = 3;
+    private static final int ITERATIONS = 20;
+    private static final double MAX_OVERHEAD = 0.15;
+
+    private static final String[] TITLE_WORDS = {"Tarta", "Sopa", "Ensalada", "Pollo", "Paella", "Flan"};
+
+    private Context context;
+    private AppDatabase plain;
+    private AppDatabase encrypted;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        plain = newDatabase(PLAIN_NAME, false);
+        encrypted = newDatabase(ENCRYPTED_NAME, true);
+    }
+
+    @After
+    public void tearDown() {
+        plain.close();
+        encrypted.close();
+        context.deleteDatabase(PLAIN_NAME);
+        context.deleteDatabase(ENCRYPTED_NAME);
+    }
+
+    @Test
+    public void listLoad() {
+        compare("listLoad", database -> {
+            RecipeDao recipeDao = database.recipeDao();
+            int afterId = 0;
+            int read = 0;
+            List<RecipeListItem> page;
+            do {
+                page = recipeDao.getRecipeListItemsAfter(afterId, RecipePager.PAGE_SIZE);
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+                read += page.size();
+            } while (page.size() == RecipePager.PAGE_SIZE);
+            assertEquals(ROWS, read);
+        });
+    }
+
+    @Test
+    public void search() {
+        String query = RecipeSearchQuery.toMatchQuery("tarta");
+        String titleQuery = RecipeSearchQuery.toTitleQuery(query);
+        compare("search", database ->
+                assertFalse(database.recipeDao().searchRecipes(query, titleQuery, RecipePager.PAGE_SIZE, 0).isEmpty()));
+    }
+
+    private interface Body {
+        void run(AppDatabase database);
+    }
+
+    private void compare(String name, Body body) {
+        for (int i = 0; i < WARM_UPS; i++) {
+            body.run(plain);
+            body.run(encrypted);
+        }
+        long[] plainRuns = new long[ITERATIONS];
+        long[] encryptedRuns = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            plainRuns[i] = time(body, plain);
+            encryptedRuns[i] = time(body, encrypted);
+        }
+        long plainMedian = median(plainRuns);
+        long encryptedMedian = median(encryptedRuns);
+        double overhead = (double) encryptedMedian / plainMedian - 1;
+        Log.i(TAG, String.format(Locale.ROOT, "%s[rows=%d]: plain %.3f ms, encrypted %.3f ms, overhead %.1f%%",
+                name, ROWS, plainMedian / 1e6, encryptedMedian / 1e6, overhead * 100));
+        assertTrue(String.format(Locale.ROOT, "%s overhead %.1f%%", name, overhead * 100), overhead <= MAX_OVERHEAD);
+    }
+
+    private static long time(Body body, AppDatabase database) {
+        long start = System.nanoTime();
+        body.run(database);
+        return System.nanoTime() - start;
+    }
+
+    private static long median(long[] runs) {
+        long[] sorted = runs.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private AppDatabase newDatabase(String name, boolean encrypt) {
+        context.deleteDatabase(name);
+        RoomDatabase.Builder<AppDatabase> builder = Room.databaseBuilder(context, AppDatabase.class, name)
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .allowMainThreadQueries();
+        if (encrypt) {
+            builder.openHelperFactory(new EncryptedOpenHelperFactory());
+        }
+        AppDatabase database = builder.build();
+        List<Recipe> recipes = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            recipes.add(new Recipe.Builder()
+                    .setTitle(TITLE_WORDS[i % TITLE_WORDS.length] + " " + i)
+                    .setResume("Resumen de la receta " + i)
+                    .setDetails("Ingredientes:\n- 2 huevos\n- 200g de harina\n\nInstrucciones:\n1. Mezcla.\n2. Hornea.")
+                    .setPhoto(i % 3 == 0 ? null : "content://photos/" + i + ".jpg")
+                    .setModifiedAt(i)
+                    .build());
+        }
+        database.runInTransaction(() -> database.recipeDao().insertRecipes(recipes));
+        return database;
+    }
+}
@@ -0,0 +1,63 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class EncryptedOpenHelperFactoryTest {
+
+    private static final String DATABASE_NAME = "encryption_test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void plainDatabase_isEncryptedInPlace() throws IOException {
+        AppDatabase plain = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME).build();
+        long id = plain.recipeDao().insertRecipe(new Recipe.Builder().setTitle("Tarta de queso").build());
+        plain.close();
+        assertTrue(EncryptedOpenHelperFactory.isPlain(context.getDatabasePath(DATABASE_NAME)));
+
+        AppDatabase encrypted = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME)
+                .openHelperFactory(new EncryptedOpenHelperFactory())
+                .build();
+        try {
+            assertEquals("Tarta de queso", encrypted.recipeDao().getRecipeById((int) id).getTitle());
+        } finally {
+            encrypted.close();
+        }
+        assertFalse(EncryptedOpenHelperFactory.isPlain(context.getDatabasePath(DATABASE_NAME)));
+
+        // Opened again with the same key
+        encrypted = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME)
+                .openHelperFactory(new EncryptedOpenHelperFactory())
+                .build();
+        try {
+            assertEquals(1, encrypted.recipeDao().getRecipeCount());
+        } finally {
+            encrypted.close();
+        }
+    }
+}
@@ -1,11 +1,413 @@
 package net.estemon.codelabs111_recyclerrecipes;
 
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
 import androidx.room.Database;
+import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import java.io.IOException;
 
-@Database(entities = {Recipe.class}, version = 1)
+/**
+ * The Room database of the app.
+ * <p>
+ * Every schema change comes with a {@link Migration} from the previous version; the schemas
+ * exported by Room from version 5 on are kept in {@code app/schemas}. Schema migrations only
+ * change the schema, which takes the same time whatever the number of rows: the changes to the
+ * existing data are {@link DataMigration}s that they schedule, run in the background in batches
+ * once the database is open (see {@link #warmUp} and {@link DataMigrations}).
+ * <p>
+ * A new database is created with an example recipe, see {@link #SEED_CALLBACK}.
+ * <p>
+ * Builds made with {@code -PencryptDatabase} keep it encrypted at rest, see
+ * {@link OpenHelperFactories}.
+ */
+@Database(entities = {Recipe.class, RecipeFts.class, Ingredient.class, Step.class}, version = 8, exportSchema = true)
 public abstract class AppDatabase extends RoomDatabase {
 
-    public abstract RecipeDao recipeDao();
+    private static final String DATABASE_NAME = "recipe_database";
+
+    /**
+     * Indexes the existing recipes in {@link RecipeFts}, {@link DataMigrations#BATCH_SIZE} at a time.
+     * Recipes written meanwhile are indexed by the triggers of Room, so only the ones that are not
+     * in the index yet ({@code recipes_fts_docsize} has a row per indexed recipe) are added.
+     * Until it finishes, the search only finds part of the old recipes.
+     */
+    static final DataMigration FTS_BACKFILL = new DataMigration("recipes_fts_backfill") {
+        @Override
+        protected int countRows(SupportSQLiteDatabase db) {
+            return countRecipes(db);
+        }
+
+        @Override
+        protected long migrateBatch(SupportSQLiteDatabase db, long after, int batchSize) {
+            long last = lastRecipeIdOfBatch(db, after, batchSize);
+            if (last != NO_MORE_ROWS) {
+                db.execSQL("INSERT INTO `recipes_fts`(`docid`, `title`, `resume`, `details`) "
+                        + "SELECT `id`, `title`, `resume`, `details` FROM `recipes` WHERE `id` > ? AND `id` <= ? "
+                        + "AND NOT EXISTS (SELECT 1 FROM `recipes_fts_docsize` WHERE `docid` = `recipes`.`id`)",
+                        new Object[]{after, last});
+            }
+            return last;
+        }
+    };
+
+    /**
+     * Gives an empty title to the untitled recipes, see {@link #MIGRATION_3_4}.
+     */
+    static final DataMigration EMPTY_TITLES_BACKFILL = new DataMigration("recipes_empty_titles") {
+        @Override
+        protected int countRows(SupportSQLiteDatabase db) {
+            return countRecipes(db);
+        }
+
+        @Override
+        protected long migrateBatch(SupportSQLiteDatabase db, long after, int batchSize) {
+            long last = lastRecipeIdOfBatch(db, after, batchSize);
+            if (last != NO_MORE_ROWS) {
+                db.execSQL("UPDATE `recipes` SET `title` = '' WHERE `id` > ? AND `id` <= ? AND `title` IS NULL",
+                        new Object[]{after, last});
+            }
+            return last;
+        }
+    };
+
+    /**
+     * Fills the {@link Ingredient} and {@link Step} tables from the details of the existing
+     * recipes, {@link DataMigrations#BATCH_SIZE} recipes at a time. The content of every recipe
+     * of the batch is deleted and written again, so a batch can be repeated, and the recipes saved
+     * meanwhile by the app (which writes their content itself) end up with the same rows.
+     * Until it finishes, the ingredient lookups only find part of the old recipes.
+     */
+    static final DataMigration DETAILS_PARSE = new DataMigration("recipes_details_parse") {
+        @Override
+        protected int countRows(SupportSQLiteDatabase db) {
+            return countRecipes(db);
+        }
+
+        @Override
+        protected long migrateBatch(SupportSQLiteDatabase db, long after, int batchSize) {
+            long last = NO_MORE_ROWS;
+            try (ContentWriter writer = new ContentWriter(db);
+                 Cursor cursor = db.query("SELECT `id`, `details` FROM `recipes` WHERE `id` > ? ORDER BY `id` LIMIT ?",
+                    new Object[]{after, batchSize})) {
+                while (cursor.moveToNext()) {
+                    last = cursor.getLong(0);
+                    writer.write(last, cursor.getString(1));
+                }
+            }
+            return last;
+        }
+    };
+
+    /**
+     * URIs of the default image that older versions wrote as the photo of the example recipe and
+     * of the recipes added without photo. They don't point to any file.
+     */
+    static final String[] LEGACY_DEFAULT_PHOTOS = {
+            "content://net.estemon.codelabs111_recyclerrecipes/drawable/ic_add",
+            "content://net.estemon.codelabs111_recyclerrecipes/res/drawable/ic_add.png"
+    };
+
+    /**
+     * Clears the photo of the recipes that had the default image written as their photo, see
+     * {@link #MIGRATION_5_6}. The list and the details already show the default image for the
+     * recipes without photo.
+     */
+    static final DataMigration DEFAULT_PHOTOS_CLEANUP = new DataMigration("recipes_default_photos") {
+        @Override
+        protected int countRows(SupportSQLiteDatabase db) {
+            return countRecipes(db);
+        }
+
+        @Override
+        protected long migrateBatch(SupportSQLiteDatabase db, long after, int batchSize) {
+            long last = lastRecipeIdOfBatch(db, after, batchSize);
+            if (last != NO_MORE_ROWS) {
+                db.execSQL("UPDATE `recipes` SET `photo` = NULL WHERE `id` > ? AND `id` <= ? AND `photo` IN (?, ?)",
+                        new Object[]{after, last, LEGACY_DEFAULT_PHOTOS[0], LEGACY_DEFAULT_PHOTOS[1]});
+            }
+            return last;
+        }
+    };
+
+    /**
+     * Adds the full-text index {@link RecipeFts}. The existing recipes are indexed afterwards
+     * by {@link #FTS_BACKFILL}. The triggers that keep it in sync are (re)created by Room
+     * after every migration.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `recipes_fts` "
+                    + "USING FTS4(`title` TEXT, `resume` TEXT, `details` TEXT, content=`recipes`)");
+            DataMigrations.enqueue(db, FTS_BACKFILL.getName());
+        }
+    };
+
+    /**
+     * Adds the columns with the thumbnail and the detail sized copy of the photo.
+     * Existing recipes keep showing their original photo until it is captured again.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `recipes` ADD COLUMN `thumbnail` TEXT");
+            db.execSQL("ALTER TABLE `recipes` ADD COLUMN `detailPhoto` TEXT");
+        }
+    };
+
+    /**
+     * Adds the modification date and the indices behind the sort modes and filters of
+     * {@link RecipeListQuery}. Untitled recipes get an empty title afterwards, with
+     * {@link #EMPTY_TITLES_BACKFILL}, so that every row has a position in the title index
+     * that the keyset queries can continue from.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `recipes` ADD COLUMN `modifiedAt` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_recipes_title` ON `recipes` (`title`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_recipes_modifiedAt` ON `recipes` (`modifiedAt`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_recipes_photo` ON `recipes` (`photo`)");
+            DataMigrations.enqueue(db, EMPTY_TITLES_BACKFILL.getName());
+        }
+    };
+
+    /**
+     * Adds the {@link Ingredient} and {@link Step} tables. They are filled afterwards from the
+     * details of the recipes by {@link #DETAILS_PARSE}.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `ingredients` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`recipeId` INTEGER NOT NULL, `position` INTEGER NOT NULL, `text` TEXT NOT NULL, `name` TEXT NOT NULL, "
+                    + "FOREIGN KEY(`recipeId`) REFERENCES `recipes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_ingredients_recipeId_position` "
+                    + "ON `ingredients` (`recipeId`, `position`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_ingredients_name_recipeId` ON `ingredients` (`name`, `recipeId`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `steps` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`recipeId` INTEGER NOT NULL, `position` INTEGER NOT NULL, `text` TEXT NOT NULL, "
+                    + "FOREIGN KEY(`recipeId`) REFERENCES `recipes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_steps_recipeId_position` ON `steps` (`recipeId`, `position`)");
+            DataMigrations.enqueue(db, DETAILS_PARSE.getName());
+        }
+    };
+
+    /**
+     * No schema change: the photos are now kept in the {@link PhotoStore}, and the recipes
+     * without photo have none. The default image written as their photo by older versions is
+     * cleared by {@link #DEFAULT_PHOTOS_CLEANUP}.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            DataMigrations.enqueue(db, DEFAULT_PHOTOS_CLEANUP.getName());
+        }
+    };
+
+    /**
+     * Rebuilds the full-text index with the {@code unicode61} tokenizer, which folds the case
+     * and the diacritics of every letter. The old index is dropped and the recipes are indexed
+     * again by {@link #FTS_BACKFILL}, from the first one.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("DROP TABLE IF EXISTS `recipes_fts`");
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `recipes_fts` USING FTS4(`title` TEXT, `resume` TEXT, "
+                    + "`details` TEXT, tokenize=unicode61 `remove_diacritics=1`, content=`recipes`)");
+            DataMigrations.restart(db, FTS_BACKFILL.getName());
+        }
+    };
+
+    /**
+     * Adds the indices of the thumbnail and detail photo columns, on which the references to the
+     * photos of the {@link PhotoStore} are counted along with the photo column.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_recipes_thumbnail` ON `recipes` (`thumbnail`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_recipes_detailPhoto` ON `recipes` (`detailPhoto`)");
+        }
+    };
+
+    static final Migration[] MIGRATIONS = {MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6,
+            MIGRATION_6_7, MIGRATION_7_8};
+
+    /**
+     * Inserts the example recipe when the database is created. It runs in the same transaction
+     * that creates the schema, so it happens exactly once per installation: never twice, and
+     * never again after the user has deleted the example. Its ingredients and steps are written
+     * by {@link #DETAILS_PARSE}, like the ones of the recipes of older versions.
+     */
+    static final Callback SEED_CALLBACK = new Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            ContentValues values = new ContentValues();
+            values.put("title", "Receta 1");
+            values.put("resume", "Resumen de la receta 1");
+            values.put("details", "Detalles de la receta 1");
+            values.put("modifiedAt", System.currentTimeMillis());
+            db.insert("recipes", SQLiteDatabase.CONFLICT_ABORT, values);
+            DataMigrations.enqueue(db, DETAILS_PARSE.getName());
+        }
+    };
+
+    private static volatile AppDatabase instance;
+
+    private volatile DataMigrations dataMigrations;
+
+    private volatile RecipeDao recipeDao;
+
+    /**
+     * The DAO generated by Room, without metrics. Use {@link #recipeDao()}.
+     */
+    public abstract RecipeDao generatedRecipeDao();
+
+    /**
+     * The DAO of the recipes, for every caller: it records the latency of each call in
+     * {@link Metrics} (see {@link InstrumentedRecipeDao}).
+     */
+    public RecipeDao recipeDao() {
+        if (recipeDao == null) {
+            synchronized (this) {
+                if (recipeDao == null) {
+                    recipeDao = new InstrumentedRecipeDao(generatedRecipeDao());
+                }
+            }
+        }
+        return recipeDao;
+    }
+
+    /**
+     * Returns the database shared by the whole process. It is built the first time it is
+     * requested; the SQLite connection itself is opened lazily by Room (see {@link #warmUp}).
+     *
+     * @param context Any context, only its application context is kept.
+     * @return The single AppDatabase instance.
+     */
+    public static AppDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AppDatabase.class) {
+                if (instance == null) {
+                    Builder<AppDatabase> builder = Room.databaseBuilder(context.getApplicationContext(),
+                                    AppDatabase.class,
+                                    DATABASE_NAME)
+                            // WAL lets the reader threads query while the writer thread commits
+                            .addMigrations(MIGRATIONS)
+                            .addCallback(SEED_CALLBACK)
+                            .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                            .setQueryExecutor(IoScheduler.get().reads())
+                            .setTransactionExecutor(IoScheduler.get().writes());
+                    builder.openHelperFactory(OpenHelperFactories.create());
+                    instance = builder.build();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The background data migrations of this database, with their progress.
+     */
+    public DataMigrations getDataMigrations() {
+        if (dataMigrations == null) {
+            synchronized (this) {
+                if (dataMigrations == null) {
+                    dataMigrations = new DataMigrations(this, IoScheduler.get().writes(),
+                            FTS_BACKFILL, EMPTY_TITLES_BACKFILL, DETAILS_PARSE, DEFAULT_PHOTOS_CLEANUP);
+                }
+            }
+        }
+        return dataMigrations;
+    }
+
+    /**
+     * Same as {@link RecipeDao#replaceContent}, on the database given to a migration, with the
+     * statements compiled once per batch.
+     */
+    private static final class ContentWriter implements AutoCloseable {
+
+        private final SupportSQLiteStatement deleteIngredients;
+        private final SupportSQLiteStatement deleteSteps;
+        private final SupportSQLiteStatement insertIngredient;
+        private final SupportSQLiteStatement insertStep;
+
+        ContentWriter(SupportSQLiteDatabase db) {
+            deleteIngredients = db.compileStatement("DELETE FROM `ingredients` WHERE `recipeId` = ?");
+            deleteSteps = db.compileStatement("DELETE FROM `steps` WHERE `recipeId` = ?");
+            insertIngredient = db.compileStatement(
+                    "INSERT INTO `ingredients` (`recipeId`, `position`, `text`, `name`) VALUES (?, ?, ?, ?)");
+            insertStep = db.compileStatement("INSERT INTO `steps` (`recipeId`, `position`, `text`) VALUES (?, ?, ?)");
+        }
+
+        void write(long recipeId, String details) {
+            deleteIngredients.bindLong(1, recipeId);
+            deleteIngredients.executeUpdateDelete();
+            deleteSteps.bindLong(1, recipeId);
+            deleteSteps.executeUpdateDelete();
+            RecipeDetailsParser.Content content = RecipeDetailsParser.parse(details);
+            for (int i = 0; i < content.ingredients.size(); i++) {
+                String text = content.ingredients.get(i);
+                insertIngredient.bindLong(1, recipeId);
+                insertIngredient.bindLong(2, i);
+                insertIngredient.bindString(3, text);
+                insertIngredient.bindString(4, RecipeDetailsParser.ingredientName(text));
+                insertIngredient.executeInsert();
+            }
+            for (int i = 0; i < content.steps.size(); i++) {
+                insertStep.bindLong(1, recipeId);
+                insertStep.bindLong(2, i);
+                insertStep.bindString(3, content.steps.get(i));
+                insertStep.executeInsert();
+            }
+        }
+
+        @Override
+        public void close() {
+            for (SupportSQLiteStatement statement : new SupportSQLiteStatement[]{
+                    deleteIngredients, deleteSteps, insertIngredient, insertStep}) {
+                try {
+                    statement.close();
+                } catch (IOException e) {
+                    // Closing a compiled statement only releases it, it doesn't do any I/O
+                }
+            }
+        }
+    }
+
+    private static int countRecipes(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM `recipes`")) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
 
+    /**
+     * Opens the database on the writer thread, creating and seeding it or migrating it, and then
+     * starts the pending data migrations. It is called once the first frame has been drawn, see
+     * {@link RecipesApplication#startDeferredWork()}.
+     * The time it takes to open is recorded in {@link StartupMetrics}.
+     *
+     * @param context Any context, only its application context is kept.
+     */
+    public static void warmUp(Context context) {
+        AppDatabase database = getInstance(context);
+        IoScheduler.get().write(() -> {
+            long start = SystemClock.elapsedRealtime();
+            database.getOpenHelper().getWritableDatabase();
+            StartupMetrics.onDatabaseOpened(SystemClock.elapsedRealtime() - start);
+            database.getDataMigrations().start();
+        });
+    }
 }
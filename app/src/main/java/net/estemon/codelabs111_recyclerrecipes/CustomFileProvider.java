@@ -4,6 +4,9 @@ import androidx.core.content.FileProvider;
 
 public class CustomFileProvider extends FileProvider {
 
+    // Debe coincidir con android:authorities del provider en el AndroidManifest
+    public static final String AUTHORITY = "net.estemon.codelabs111_recyclerrecipes.fileprovider";
+
     public CustomFileProvider() {
         super(R.xml.file_paths);
     }
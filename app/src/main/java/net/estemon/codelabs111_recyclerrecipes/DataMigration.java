@@ -0,0 +1,59 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * A change to the data of existing rows (a backfill) that is too slow to be done inside a
+ * schema {@link androidx.room.migration.Migration} on big tables.
+ * <p>
+ * The schema migration only schedules it with {@link DataMigrations#enqueue}; once the database
+ * is open, {@link DataMigrations} runs it in the background in batches, each one in its own
+ * transaction, walking the rows in the order of a key (usually the id). The position reached is
+ * saved with every batch, so an interrupted migration continues where it was left.
+ * Every batch must be idempotent: it can be run again after a crash before its commit.
+ */
+public abstract class DataMigration {
+
+    /**
+     * Returned by {@link #migrateBatch} when there are no rows left after the given key.
+     */
+    public static final long NO_MORE_ROWS = Long.MIN_VALUE;
+
+    private final String name;
+
+    /**
+     * @param name Unique name of the migration, stored while it is pending. Never change it.
+     */
+    protected DataMigration(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Number of rows the migration will visit, to report the progress.
+     */
+    protected abstract int countRows(SupportSQLiteDatabase db);
+
+    /**
+     * Migrates up to {@code batchSize} rows whose key is greater than {@code after}.
+     *
+     * @return The key of the last row visited, or {@link #NO_MORE_ROWS} if there were none.
+     */
+    protected abstract long migrateBatch(SupportSQLiteDatabase db, long after, int batchSize);
+
+    /**
+     * Id of the last recipe of the batch of {@code batchSize} recipes that follows {@code after},
+     * found walking the primary key, or {@link #NO_MORE_ROWS}.
+     */
+    protected static long lastRecipeIdOfBatch(SupportSQLiteDatabase db, long after, int batchSize) {
+        try (Cursor cursor = db.query("SELECT MAX(`id`) FROM (SELECT `id` FROM `recipes` WHERE `id` > ? "
+                + "ORDER BY `id` LIMIT ?)", new Object[]{after, batchSize})) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : NO_MORE_ROWS;
+        }
+    }
+}
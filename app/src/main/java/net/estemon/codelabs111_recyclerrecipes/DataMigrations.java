@@ -0,0 +1,183 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the pending {@link DataMigration}s of a database in the background.
+ * <p>
+ * The schema migrations add the pending ones to the {@value #TABLE} table with
+ * {@link #enqueue}. After the database is open, {@link #start()} runs them one batch per task on
+ * the given executor (the writer lane of {@link IoScheduler}), so other writes are interleaved
+ * between batches instead of waiting for the whole migration, and the app is usable meanwhile.
+ * The progress is published with {@link #getProgress()}.
+ */
+public class DataMigrations {
+
+    private static final String TAG = "DataMigrations";
+
+    static final String TABLE = "data_migrations";
+
+    public static final int BATCH_SIZE = 1000;
+
+    private final RoomDatabase database;
+    private final Executor executor;
+    private final Map<String, DataMigration> migrations = new HashMap<>();
+    private final MutableLiveData<Progress> progress = new MutableLiveData<>();
+
+    // State of the migration in progress, only used on the executor
+    private DataMigration current;
+    private int done;
+    private int total;
+    private long startMillis;
+
+    /**
+     * Progress of a data migration.
+     */
+    public static final class Progress {
+
+        public final String name;
+        public final int done;
+        public final int total;
+        public final boolean finished;
+
+        Progress(String name, int done, int total, boolean finished) {
+            this.name = name;
+            this.done = done;
+            this.total = total;
+            this.finished = finished;
+        }
+
+        /**
+         * Percentage of the rows migrated, between 0 and 100.
+         */
+        public int getPercent() {
+            return finished || total == 0 ? 100 : (int) (100L * done / total);
+        }
+    }
+
+    /**
+     * @param database   The database to migrate.
+     * @param executor   Where the batches are run, one per task.
+     * @param migrations Every data migration that can be pending, found by name.
+     */
+    public DataMigrations(RoomDatabase database, Executor executor, DataMigration... migrations) {
+        this.database = database;
+        this.executor = executor;
+        for (DataMigration migration : migrations) {
+            this.migrations.put(migration.getName(), migration);
+        }
+    }
+
+    /**
+     * Schedules a data migration. To be called from a schema migration: it runs in its transaction.
+     */
+    public static void enqueue(SupportSQLiteDatabase db, String name) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS `" + TABLE + "` "
+                + "(`name` TEXT PRIMARY KEY NOT NULL, `position` INTEGER NOT NULL)");
+        db.execSQL("INSERT OR IGNORE INTO `" + TABLE + "` (`name`, `position`) VALUES (?, ?)",
+                new Object[]{name, 0});
+    }
+
+    /**
+     * Schedules a data migration from its first row, even if it was already pending and halfway
+     * through. To be called from a schema migration that undoes the rows it already migrated.
+     */
+    public static void restart(SupportSQLiteDatabase db, String name) {
+        enqueue(db, name);
+        db.execSQL("UPDATE `" + TABLE + "` SET `position` = 0 WHERE `name` = ?", new Object[]{name});
+    }
+
+    /**
+     * Progress of the migration in progress, and a finished one when there are none left.
+     * Stays empty if there was nothing to migrate.
+     */
+    public LiveData<Progress> getProgress() {
+        return progress;
+    }
+
+    /**
+     * Starts running the pending migrations, if any. Must be called after the database is open.
+     */
+    public void start() {
+        executor.execute(this::runNextBatch);
+    }
+
+    private void runNextBatch() {
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        if (current == null) {
+            current = nextPending(db);
+            if (current == null) {
+                return;
+            }
+            done = 0;
+            total = current.countRows(db);
+            startMillis = SystemClock.elapsedRealtime();
+        }
+        DataMigration migration = current;
+        // The batch and its new position are committed together
+        long last = database.runInTransaction(() -> {
+            long position = readPosition(db, migration.getName());
+            long lastKey = migration.migrateBatch(db, position, BATCH_SIZE);
+            if (lastKey == DataMigration.NO_MORE_ROWS) {
+                db.execSQL("DELETE FROM `" + TABLE + "` WHERE `name` = ?", new Object[]{migration.getName()});
+            } else {
+                db.execSQL("UPDATE `" + TABLE + "` SET `position` = ? WHERE `name` = ?",
+                        new Object[]{lastKey, migration.getName()});
+            }
+            return lastKey;
+        });
+        if (last == DataMigration.NO_MORE_ROWS) {
+            Log.i(TAG, "Migrated " + migration.getName() + " (" + total + " rows) in "
+                    + (SystemClock.elapsedRealtime() - startMillis) + "ms");
+            progress.postValue(new Progress(migration.getName(), total, total, true));
+            current = null;
+        } else {
+            done = Math.min(total, done + BATCH_SIZE);
+            progress.postValue(new Progress(migration.getName(), done, total, false));
+        }
+        // Next batch (or migration) as a new task, after the writes queued meanwhile
+        executor.execute(this::runNextBatch);
+    }
+
+    @Nullable
+    private DataMigration nextPending(SupportSQLiteDatabase db) {
+        if (!hasTable(db)) {
+            return null;
+        }
+        try (Cursor cursor = db.query("SELECT `name` FROM `" + TABLE + "` ORDER BY `rowid`")) {
+            while (cursor.moveToNext()) {
+                DataMigration migration = migrations.get(cursor.getString(0));
+                if (migration != null) {
+                    return migration;
+                }
+                Log.w(TAG, "Unknown data migration " + cursor.getString(0) + ", skipped");
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasTable(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query("SELECT 1 FROM `sqlite_master` WHERE `type` = 'table' AND `name` = ?",
+                new Object[]{TABLE})) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    private static long readPosition(SupportSQLiteDatabase db, String name) {
+        try (Cursor cursor = db.query("SELECT `position` FROM `" + TABLE + "` WHERE `name` = ?", new Object[]{name})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One ingredient of a recipe, parsed from its details by {@link RecipeDetailsParser}.
+ * <p>
+ * The ({@code name}, {@code recipeId}) index answers "recipes with this ingredient" without
+ * reading the table, and ({@code recipeId}, {@code position}) the ingredients of a recipe in order.
+ * They are deleted with their recipe.
+ */
+@Entity(tableName = "ingredients",
+        foreignKeys = @ForeignKey(entity = Recipe.class, parentColumns = "id", childColumns = "recipeId",
+                onDelete = ForeignKey.CASCADE),
+        indices = {@Index(value = {"recipeId", "position"}, unique = true), @Index({"name", "recipeId"})})
+public class Ingredient {
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private final int recipeId;
+
+    // Position in the list of ingredients of the recipe, from 0
+    private final int position;
+
+    // As written in the recipe, such as "500g de harina"
+    @NonNull
+    private final String text;
+
+    // Lookup key, such as "harina" (see RecipeDetailsParser.ingredientName)
+    @NonNull
+    private final String name;
+
+    public Ingredient(int recipeId, int position, @NonNull String text, @NonNull String name) {
+        this.recipeId = recipeId;
+        this.position = position;
+        this.text = text;
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getRecipeId() {
+        return recipeId;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    @NonNull
+    public String getText() {
+        return text;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+}
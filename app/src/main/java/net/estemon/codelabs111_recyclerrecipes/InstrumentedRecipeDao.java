@@ -0,0 +1,382 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link RecipeDao} that records the latency of every call of another one in {@link Metrics},
+ * under {@code RecipeDao.<method>}. It is the DAO returned by {@link AppDatabase#recipeDao()},
+ * so every caller is measured.
+ * <p>
+ * Every method is delegated, the default ones included: they run on the DAO generated by Room,
+ * with its transactions, and their inner calls are not recorded twice.
+ * <p>
+ * Only the call itself is measured: for the cursors that is the preparation of the statement (the
+ * rows are read later by the caller).
+ */
+public class InstrumentedRecipeDao implements RecipeDao {
+
+    private static final String INSERT_RECIPE = "RecipeDao.insertRecipe";
+    private static final String INSERT_RECIPES = "RecipeDao.insertRecipes";
+    private static final String UPDATE_RECIPE = "RecipeDao.updateRecipe";
+    private static final String UPSERT_RECIPES = "RecipeDao.upsertRecipes";
+    private static final String SAVE_RECIPE_WITH_CONTENT = "RecipeDao.saveRecipeWithContent";
+    private static final String REPLACE_CONTENT = "RecipeDao.replaceContent";
+    private static final String INSERT_INGREDIENTS = "RecipeDao.insertIngredients";
+    private static final String INSERT_STEPS = "RecipeDao.insertSteps";
+    private static final String DELETE_INGREDIENTS = "RecipeDao.deleteIngredients";
+    private static final String DELETE_STEPS = "RecipeDao.deleteSteps";
+    private static final String GET_RECIPE_WITH_CONTENT = "RecipeDao.getRecipeWithContent";
+    private static final String GET_INGREDIENTS = "RecipeDao.getIngredients";
+    private static final String GET_STEPS = "RecipeDao.getSteps";
+    private static final String GET_INGREDIENTS_OF_RECIPES = "RecipeDao.getIngredientsOfRecipes";
+    private static final String GET_RECIPE_LIST_ITEMS_WITH_INGREDIENT = "RecipeDao.getRecipeListItemsWithIngredient";
+    private static final String GET_RECIPE_LIST_ITEMS_WITH_INGREDIENT_RANGE = "RecipeDao.getRecipeListItemsWithIngredientRange";
+    private static final String GET_RECIPE_LIST_ITEMS_AFTER = "RecipeDao.getRecipeListItemsAfter";
+    private static final String GET_RECIPE_LIST_ITEMS = "RecipeDao.getRecipeListItems";
+    private static final String GET_RECIPE_BY_ID = "RecipeDao.getRecipeById";
+    private static final String SEARCH_RECIPES = "RecipeDao.searchRecipes";
+    private static final String GET_RECIPES_CURSOR = "RecipeDao.getRecipesCursor";
+    private static final String GET_PHOTO_REFERENCES_CURSOR = "RecipeDao.getPhotoReferencesCursor";
+    private static final String COUNT_PHOTO_REFERENCES = "RecipeDao.countPhotoReferences";
+    private static final String GET_RECIPE_COUNT = "RecipeDao.getRecipeCount";
+    private static final String DELETE_RECIPE = "RecipeDao.deleteRecipe";
+    private static final String DELETE_RECIPE_BY_ID = "RecipeDao.deleteRecipeById";
+    private static final String DELETE_RECIPES_BY_IDS_CHUNK = "RecipeDao.deleteRecipesByIdsChunk";
+    private static final String DELETE_RECIPES_BY_IDS = "RecipeDao.deleteRecipesByIds";
+    private static final String GET_RECIPES_BY_IDS_CHUNK = "RecipeDao.getRecipesByIdsChunk";
+    private static final String DELETE_RECIPES_RETURNING = "RecipeDao.deleteRecipesReturning";
+    private static final String RESTORE_RECIPES = "RecipeDao.restoreRecipes";
+
+    private final RecipeDao delegate;
+
+    public InstrumentedRecipeDao(RecipeDao delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public long insertRecipe(Recipe recipe) {
+        long start = Metrics.begin(INSERT_RECIPE);
+        try {
+            return delegate.insertRecipe(recipe);
+        } finally {
+            Metrics.end(INSERT_RECIPE, start);
+        }
+    }
+
+    @Override
+    public long[] insertRecipes(List<Recipe> recipes) {
+        long start = Metrics.begin(INSERT_RECIPES);
+        try {
+            return delegate.insertRecipes(recipes);
+        } finally {
+            Metrics.end(INSERT_RECIPES, start);
+        }
+    }
+
+    @Override
+    public int updateRecipe(Recipe recipe) {
+        long start = Metrics.begin(UPDATE_RECIPE);
+        try {
+            return delegate.updateRecipe(recipe);
+        } finally {
+            Metrics.end(UPDATE_RECIPE, start);
+        }
+    }
+
+    @Override
+    public long[] upsertRecipes(List<Recipe> recipes) {
+        long start = Metrics.begin(UPSERT_RECIPES);
+        try {
+            return delegate.upsertRecipes(recipes);
+        } finally {
+            Metrics.end(UPSERT_RECIPES, start);
+        }
+    }
+
+    /**
+     * Delegates the whole call, so it keeps running in the transaction of the Room implementation.
+     */
+    @Override
+    public long saveRecipeWithContent(Recipe recipe) {
+        long start = Metrics.begin(SAVE_RECIPE_WITH_CONTENT);
+        try {
+            return delegate.saveRecipeWithContent(recipe);
+        } finally {
+            Metrics.end(SAVE_RECIPE_WITH_CONTENT, start);
+        }
+    }
+
+    @Override
+    public void replaceContent(int recipeId, String details) {
+        long start = Metrics.begin(REPLACE_CONTENT);
+        try {
+            delegate.replaceContent(recipeId, details);
+        } finally {
+            Metrics.end(REPLACE_CONTENT, start);
+        }
+    }
+
+    @Override
+    public void insertIngredients(List<Ingredient> ingredients) {
+        long start = Metrics.begin(INSERT_INGREDIENTS);
+        try {
+            delegate.insertIngredients(ingredients);
+        } finally {
+            Metrics.end(INSERT_INGREDIENTS, start);
+        }
+    }
+
+    @Override
+    public void insertSteps(List<Step> steps) {
+        long start = Metrics.begin(INSERT_STEPS);
+        try {
+            delegate.insertSteps(steps);
+        } finally {
+            Metrics.end(INSERT_STEPS, start);
+        }
+    }
+
+    @Override
+    public void deleteIngredients(int recipeId) {
+        long start = Metrics.begin(DELETE_INGREDIENTS);
+        try {
+            delegate.deleteIngredients(recipeId);
+        } finally {
+            Metrics.end(DELETE_INGREDIENTS, start);
+        }
+    }
+
+    @Override
+    public void deleteSteps(int recipeId) {
+        long start = Metrics.begin(DELETE_STEPS);
+        try {
+            delegate.deleteSteps(recipeId);
+        } finally {
+            Metrics.end(DELETE_STEPS, start);
+        }
+    }
+
+    @Override
+    public List<RecipeListItem> getRecipeListItemsAfter(int afterId, int limit) {
+        long start = Metrics.begin(GET_RECIPE_LIST_ITEMS_AFTER);
+        try {
+            return delegate.getRecipeListItemsAfter(afterId, limit);
+        } finally {
+            Metrics.end(GET_RECIPE_LIST_ITEMS_AFTER, start);
+        }
+    }
+
+    @Override
+    public List<RecipeListItem> getRecipeListItems(SupportSQLiteQuery query) {
+        long start = Metrics.begin(GET_RECIPE_LIST_ITEMS);
+        try {
+            return delegate.getRecipeListItems(query);
+        } finally {
+            Metrics.end(GET_RECIPE_LIST_ITEMS, start);
+        }
+    }
+
+    @Override
+    public Recipe getRecipeById(int id) {
+        long start = Metrics.begin(GET_RECIPE_BY_ID);
+        try {
+            return delegate.getRecipeById(id);
+        } finally {
+            Metrics.end(GET_RECIPE_BY_ID, start);
+        }
+    }
+
+    @Override
+    public RecipeWithContent getRecipeWithContent(int id) {
+        long start = Metrics.begin(GET_RECIPE_WITH_CONTENT);
+        try {
+            return delegate.getRecipeWithContent(id);
+        } finally {
+            Metrics.end(GET_RECIPE_WITH_CONTENT, start);
+        }
+    }
+
+    @Override
+    public List<Ingredient> getIngredients(int recipeId) {
+        long start = Metrics.begin(GET_INGREDIENTS);
+        try {
+            return delegate.getIngredients(recipeId);
+        } finally {
+            Metrics.end(GET_INGREDIENTS, start);
+        }
+    }
+
+    @Override
+    public List<Step> getSteps(int recipeId) {
+        long start = Metrics.begin(GET_STEPS);
+        try {
+            return delegate.getSteps(recipeId);
+        } finally {
+            Metrics.end(GET_STEPS, start);
+        }
+    }
+
+    @Override
+    public List<Ingredient> getIngredientsOfRecipes(List<Integer> recipeIds) {
+        long start = Metrics.begin(GET_INGREDIENTS_OF_RECIPES);
+        try {
+            return delegate.getIngredientsOfRecipes(recipeIds);
+        } finally {
+            Metrics.end(GET_INGREDIENTS_OF_RECIPES, start);
+        }
+    }
+
+    @Override
+    public List<RecipeListItem> getRecipeListItemsWithIngredient(String ingredient, int limit) {
+        long start = Metrics.begin(GET_RECIPE_LIST_ITEMS_WITH_INGREDIENT);
+        try {
+            return delegate.getRecipeListItemsWithIngredient(ingredient, limit);
+        } finally {
+            Metrics.end(GET_RECIPE_LIST_ITEMS_WITH_INGREDIENT, start);
+        }
+    }
+
+    @Override
+    public List<RecipeListItem> getRecipeListItemsWithIngredientRange(String from, String to, int limit) {
+        long start = Metrics.begin(GET_RECIPE_LIST_ITEMS_WITH_INGREDIENT_RANGE);
+        try {
+            return delegate.getRecipeListItemsWithIngredientRange(from, to, limit);
+        } finally {
+            Metrics.end(GET_RECIPE_LIST_ITEMS_WITH_INGREDIENT_RANGE, start);
+        }
+    }
+
+    @Override
+    public List<RecipeListItem> searchRecipes(String query, String titleQuery, int limit, int offset) {
+        long start = Metrics.begin(SEARCH_RECIPES);
+        try {
+            return delegate.searchRecipes(query, titleQuery, limit, offset);
+        } finally {
+            Metrics.end(SEARCH_RECIPES, start);
+        }
+    }
+
+    @Override
+    public Cursor getRecipesCursor() {
+        long start = Metrics.begin(GET_RECIPES_CURSOR);
+        try {
+            return delegate.getRecipesCursor();
+        } finally {
+            Metrics.end(GET_RECIPES_CURSOR, start);
+        }
+    }
+
+    @Override
+    public Cursor getPhotoReferencesCursor() {
+        long start = Metrics.begin(GET_PHOTO_REFERENCES_CURSOR);
+        try {
+            return delegate.getPhotoReferencesCursor();
+        } finally {
+            Metrics.end(GET_PHOTO_REFERENCES_CURSOR, start);
+        }
+    }
+
+    @Override
+    public int countPhotoReferences(String photo, List<String> copies) {
+        long start = Metrics.begin(COUNT_PHOTO_REFERENCES);
+        try {
+            return delegate.countPhotoReferences(photo, copies);
+        } finally {
+            Metrics.end(COUNT_PHOTO_REFERENCES, start);
+        }
+    }
+
+    @Override
+    public int getRecipeCount() {
+        long start = Metrics.begin(GET_RECIPE_COUNT);
+        try {
+            return delegate.getRecipeCount();
+        } finally {
+            Metrics.end(GET_RECIPE_COUNT, start);
+        }
+    }
+
+    @Override
+    public void deleteRecipe(Recipe recipe) {
+        long start = Metrics.begin(DELETE_RECIPE);
+        try {
+            delegate.deleteRecipe(recipe);
+        } finally {
+            Metrics.end(DELETE_RECIPE, start);
+        }
+    }
+
+    @Override
+    public int deleteRecipeById(int id) {
+        long start = Metrics.begin(DELETE_RECIPE_BY_ID);
+        try {
+            return delegate.deleteRecipeById(id);
+        } finally {
+            Metrics.end(DELETE_RECIPE_BY_ID, start);
+        }
+    }
+
+    @Override
+    public int deleteRecipesByIdsChunk(List<Integer> ids) {
+        long start = Metrics.begin(DELETE_RECIPES_BY_IDS_CHUNK);
+        try {
+            return delegate.deleteRecipesByIdsChunk(ids);
+        } finally {
+            Metrics.end(DELETE_RECIPES_BY_IDS_CHUNK, start);
+        }
+    }
+
+    /**
+     * Delegates the whole call, so it keeps running in the transaction of the Room implementation.
+     */
+    @Override
+    public int deleteRecipesByIds(Collection<Integer> ids) {
+        long start = Metrics.begin(DELETE_RECIPES_BY_IDS);
+        try {
+            return delegate.deleteRecipesByIds(ids);
+        } finally {
+            Metrics.end(DELETE_RECIPES_BY_IDS, start);
+        }
+    }
+
+    @Override
+    public List<Recipe> getRecipesByIdsChunk(List<Integer> ids) {
+        long start = Metrics.begin(GET_RECIPES_BY_IDS_CHUNK);
+        try {
+            return delegate.getRecipesByIdsChunk(ids);
+        } finally {
+            Metrics.end(GET_RECIPES_BY_IDS_CHUNK, start);
+        }
+    }
+
+    /**
+     * Delegates the whole call, so it keeps running in the transaction of the Room implementation.
+     */
+    @Override
+    public List<Recipe> deleteRecipesReturning(Collection<Integer> ids) {
+        long start = Metrics.begin(DELETE_RECIPES_RETURNING);
+        try {
+            return delegate.deleteRecipesReturning(ids);
+        } finally {
+            Metrics.end(DELETE_RECIPES_RETURNING, start);
+        }
+    }
+
+    /**
+     * Delegates the whole call, so it keeps running in the transaction of the Room implementation.
+     */
+    @Override
+    public void restoreRecipes(List<Recipe> recipes) {
+        long start = Metrics.begin(RESTORE_RECIPES);
+        try {
+            delegate.restoreRecipes(recipes);
+        } finally {
+            Metrics.end(RESTORE_RECIPES, start);
+        }
+    }
+}
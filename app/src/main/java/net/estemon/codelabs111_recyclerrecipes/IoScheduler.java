@@ -0,0 +1,224 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * App-wide scheduler for the database work. Every {@link RecipeDao} call goes through it.
+ * <p>
+ * It has three lanes with a fixed number of threads each:
+ * <ul>
+ *     <li>A single writer thread, so the writes are run one after the other in the order they
+ *     were submitted.</li>
+ *     <li>A small pool of reader threads for the queries.</li>
+ *     <li>A single thread for the long jobs, like the backups, that would hold the other lanes
+ *     for their whole run. They stream their reads on it and submit their writes to the writer
+ *     lane in short tasks.</li>
+ * </ul>
+ * Each lane keeps track of its queue depth, how long the tasks wait in the queue and how long
+ * they take to run. Both times are also recorded in the {@link Metrics} histograms
+ * {@code <lane>.wait} and {@code <lane>.run}, and the tasks are traced as {@code <lane>.run}.
+ */
+public final class IoScheduler {
+
+    private static final String TAG = "IoScheduler";
+
+    private static final int READER_THREADS = 2;
+
+    // Tasks that wait longer than this in the queue are reported in the log
+    private static final long SLOW_WAIT_MILLIS = 100;
+
+    private static volatile IoScheduler instance;
+
+    private final Lane writeLane = new Lane("recipes-db-write", 1);
+    private final Lane readLane = new Lane("recipes-db-read", READER_THREADS);
+    private final Lane jobLane = new Lane("recipes-jobs", 1);
+
+    private IoScheduler() {
+    }
+
+    /**
+     * Returns the scheduler shared by the whole app.
+     */
+    public static IoScheduler get() {
+        if (instance == null) {
+            synchronized (IoScheduler.class) {
+                if (instance == null) {
+                    instance = new IoScheduler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Runs a task that writes to the database. Writes are run in submission order.
+     */
+    public void write(Runnable task) {
+        writeLane.execute(task);
+    }
+
+    /**
+     * Runs a task that only reads from the database.
+     */
+    public void read(Runnable task) {
+        readLane.execute(task);
+    }
+
+    /**
+     * Runs a long job, like an export or an import. Jobs are run one after the other on their
+     * own thread, so they don't take the writer or a reader for their whole run.
+     */
+    public void job(Runnable task) {
+        jobLane.execute(task);
+    }
+
+    /**
+     * Returns the writer lane as an {@link Executor}.
+     */
+    public Executor writes() {
+        return writeLane;
+    }
+
+    /**
+     * Returns the reader lane as an {@link Executor}.
+     */
+    public Executor reads() {
+        return readLane;
+    }
+
+    public LaneStats getWriteStats() {
+        return writeLane.snapshot();
+    }
+
+    public LaneStats getReadStats() {
+        return readLane.snapshot();
+    }
+
+    public LaneStats getJobStats() {
+        return jobLane.snapshot();
+    }
+
+    /**
+     * Snapshot of the counters of one lane.
+     */
+    public static final class LaneStats {
+
+        public final String name;
+        public final int queueDepth;
+        public final long completedTasks;
+        public final long averageWaitMillis;
+        public final long maxWaitMillis;
+        public final long averageRunMillis;
+        public final long maxRunMillis;
+
+        LaneStats(String name, int queueDepth, long completedTasks, long averageWaitMillis,
+                  long maxWaitMillis, long averageRunMillis, long maxRunMillis) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.completedTasks = completedTasks;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+            this.averageRunMillis = averageRunMillis;
+            this.maxRunMillis = maxRunMillis;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s: queue=%d completed=%d wait(avg/max)=%d/%dms run(avg/max)=%d/%dms",
+                    name, queueDepth, completedTasks, averageWaitMillis, maxWaitMillis,
+                    averageRunMillis, maxRunMillis);
+        }
+    }
+
+    /**
+     * Fixed size thread pool that measures the tasks it runs.
+     */
+    private static final class Lane implements Executor {
+
+        private final String name;
+        private final String waitMetric;
+        private final String runMetric;
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicLong completedTasks = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+
+        Lane(String name, int threads) {
+            this.name = name;
+            this.waitMetric = name + ".wait";
+            this.runMetric = name + ".run";
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, name + "-" + threadCount.incrementAndGet()));
+            // Idle threads are released, so the lanes cost nothing when the app does no DB work
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(@NonNull Runnable task) {
+            final long enqueuedAt = System.nanoTime();
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                long waitNanos = startedAt - enqueuedAt;
+                Metrics.record(waitMetric, waitNanos);
+                long traceStart = Metrics.begin(runMetric);
+                try {
+                    task.run();
+                } finally {
+                    Metrics.end(runMetric, traceStart);
+                    long runNanos = System.nanoTime() - startedAt;
+                    completedTasks.incrementAndGet();
+                    totalWaitNanos.addAndGet(waitNanos);
+                    totalRunNanos.addAndGet(runNanos);
+                    updateMax(maxWaitNanos, waitNanos);
+                    updateMax(maxRunNanos, runNanos);
+                    if (TimeUnit.NANOSECONDS.toMillis(waitNanos) > SLOW_WAIT_MILLIS) {
+                        Log.w(TAG, "Task waited " + TimeUnit.NANOSECONDS.toMillis(waitNanos)
+                                + "ms in the queue. " + snapshot());
+                    }
+                }
+            });
+        }
+
+        LaneStats snapshot() {
+            long completed = completedTasks.get();
+            long divisor = Math.max(completed, 1);
+            return new LaneStats(name,
+                    executor.getQueue().size(),
+                    completed,
+                    TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / divisor),
+                    TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+                    TimeUnit.NANOSECONDS.toMillis(totalRunNanos.get() / divisor),
+                    TimeUnit.NANOSECONDS.toMillis(maxRunNanos.get()));
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current;
+            while (value > (current = max.get())) {
+                if (max.compareAndSet(current, value)) {
+                    return;
+                }
+            }
+        }
+    }
+}
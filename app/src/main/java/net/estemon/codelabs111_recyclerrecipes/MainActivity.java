@@ -5,39 +5,48 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
+import android.util.Log;
+import android.view.Choreographer;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
+import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
-import android.widget.ImageButton;
 import android.widget.ImageView;
-import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
+import androidx.appcompat.widget.SearchView;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.room.Room;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.android.material.snackbar.Snackbar;
 
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * MainActivity que muestra una lista de recetas en un RecyclerView.
@@ -45,18 +54,40 @@ import java.util.concurrent.Executors;
  */
 public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnRecipeClickListener, View.OnCreateContextMenuListener {
 
-    // Lista para almacenar los datos de las recetas
-    final List<Recipe> recipes = new ArrayList<>();
-
     RecipeAdapter mAdapter;
 
+    // Recetas cargadas, búsqueda y caché de recetas completas; sobrevive a los cambios de configuración
+    private RecipeViewModel viewModel;
+
+    private RecipeDetailDialog recipeDetailDialog;
+
+    // Barra de acciones de la selección múltiple, null si no se están seleccionando recetas
+    private ActionMode selectionActionMode;
+
+    // Número de filas por delante de las visibles cuyas fotos se precargan
+    private static final int PHOTO_PRELOAD_ROWS = 10;
+
+    // Tiempo de espera tras la última pulsación antes de lanzar la búsqueda
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private String pendingSearchText;
+    private final Runnable searchRunnable = () ->
+            viewModel.setSearchQuery(RecipeSearchQuery.toMatchQuery(pendingSearchText));
+
     // URI de la foto capturada con la cámara
     private Uri photoUri;
 
+    // Fichero de la foto capturada y miniaturas que se generan a partir de ella
+    private File photoFile;
+    private CompletableFuture<ThumbnailGenerator.Result> pendingThumbnails;
+    private ThumbnailGenerator thumbnailGenerator;
+
     // ActivityResultLauncher para capturar la imagen
     private ActivityResultLauncher<Uri> captureImageLauncher;
 
-    private RecipeDao recipeDao;
+    // Vista previa del diálogo desde el que se ha lanzado la cámara
+    private ImageView capturePreview;
 
     public MainActivity() {
     }
@@ -68,37 +99,290 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        // Inicialización de la BD en Room
-        initDatabase();
-
         setContentView(R.layout.activity_main);
+        setSupportActionBar(findViewById(R.id.toolbar));
+
+        // Progreso de las migraciones de datos que quedan tras actualizar la app
+        AppDatabase.getInstance(this).getDataMigrations().getProgress().observe(this, progress ->
+                getSupportActionBar().setSubtitle(progress.finished
+                        ? null
+                        : getString(R.string.migrating_recipes, progress.getPercent())));
 
         // Configura el RecyclerView y el adaptador
         RecyclerView mRecyclerView = findViewById(R.id.recycler_view);
-        mAdapter = new RecipeAdapter(recipes);
+        RequestManager requestManager = Glide.with(this);
+        int photoSize = getResources().getDimensionPixelSize(R.dimen.recipe_thumbnail_size);
+        mAdapter = new RecipeAdapter(requestManager, photoSize);
 
-        // Registra el OnRecipeClickListener en el adaptador
+        // Registra el OnRecipeClickListener en el adaptador; el diálogo de detalles se reutiliza
         mAdapter.setOnRecipeClickListener(this);
+        mAdapter.setOnSelectionChangedListener(this::onSelectionChanged);
         mRecyclerView.setAdapter(mAdapter);
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        mRecyclerView.setLayoutManager(layoutManager);
+
+        // Carga la página siguiente (o la anterior) cuando el usuario se acerca al final (o al principio)
+        // de las recetas cargadas: cualquier cambio en la tabla se refleja sin recargar a mano.
+        // Al recrear la actividad, el ViewModel conserva las páginas ya cargadas.
+        viewModel = new ViewModelProvider(this).get(RecipeViewModel.class);
+        viewModel.getRecipes().observe(this, this::showRecipes);
+        recipeDetailDialog = new RecipeDetailDialog(this, viewModel, requestManager);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                viewModel.onScrolled(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
+            }
+        });
 
-        LayoutInflater inflater = this.getLayoutInflater();
-        @SuppressLint("InflateParams") View dialogView = inflater.inflate(R.layout.add_recipe_dialog, null);
-        final ImageView previewRecipePhoto = dialogView.findViewById(R.id.preview_recipe_photo);
+        // Precarga las fotos de las filas que están a punto de aparecer en pantalla
+        mRecyclerView.addOnScrollListener(new RecyclerViewPreloader<>(requestManager, mAdapter,
+                new FixedPreloadSizeProvider<>(photoSize, photoSize), PHOTO_PRELOAD_ROWS));
 
         // Configura el lanzador para capturar imágenes de la cámara
-        setupImageCaptureLauncher(previewRecipePhoto);
+        thumbnailGenerator = new ThumbnailGenerator(this);
+        setupImageCaptureLauncher();
 
         // Configura el botón flotante para agregar nuevas recetas
         FloatingActionButton fabAddRecipe = findViewById(R.id.fab_add_recipe);
         fabAddRecipe.setOnClickListener(view -> showAddRecipeDialog());
 
-        if (savedInstanceState == null) {
-            initDatabase();
-            insertExampleRecipe();
+        registerForContextMenu(mRecyclerView);
+
+        // La base de datos no se toca hasta que se ha dibujado el primer frame
+        runAfterFirstFrame(() -> {
+            ((RecipesApplication) getApplication()).startDeferredWork();
+            viewModel.start();
+        });
+    }
+
+    /**
+     * Ejecuta la tarea en el hilo de la UI justo después de que se haya dibujado el primer frame de la actividad.
+     * El callback de Choreographer se ejecuta al principio de ese frame, y el mensaje que publica, al terminarlo.
+     */
+    private static void runAfterFirstFrame(Runnable task) {
+        Handler handler = new Handler(Looper.getMainLooper());
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos -> handler.postAtFrontOfQueue(task));
+    }
+
+    @Override
+    protected void onDestroy() {
+        searchHandler.removeCallbacks(searchRunnable);
+        recipeDetailDialog.dismiss();
+        super.onDestroy();
+    }
+
+    /**
+     * Muestra el número de recetas seleccionadas en la barra de acciones de la selección,
+     * que se abre con la primera receta seleccionada.
+     */
+    private void onSelectionChanged(int selectedCount) {
+        if (!mAdapter.isSelectionMode()) {
+            return;
+        }
+        if (selectionActionMode == null) {
+            selectionActionMode = startSupportActionMode(selectionCallback);
+        }
+        if (selectionActionMode != null) {
+            selectionActionMode.setTitle(getResources().getQuantityString(
+                    R.plurals.recipes_selected, selectedCount, selectedCount));
+        }
+    }
+
+    private final ActionMode.Callback selectionCallback = new ActionMode.Callback() {
+        @Override
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            mode.getMenuInflater().inflate(R.menu.recipe_selection_menu, menu);
+            return true;
         }
 
-        registerForContextMenu(mRecyclerView);
+        @Override
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        @Override
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            if (item.getItemId() == R.id.action_delete_selected) {
+                deleteRecipes(mAdapter.getSelectedIds());
+                mode.finish();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onDestroyActionMode(ActionMode mode) {
+            selectionActionMode = null;
+            mAdapter.clearSelection();
+        }
+    };
+
+    /**
+     * Elimina las recetas en una sola transacción y ofrece deshacerlo mientras se conservan.
+     */
+    private void deleteRecipes(List<Integer> recipeIds) {
+        if (recipeIds.isEmpty()) {
+            return;
+        }
+        viewModel.deleteRecipes(recipeIds, deleted -> {
+            if (isFinishing() || isDestroyed() || deleted == 0) {
+                return;
+            }
+            Snackbar.make(findViewById(R.id.recycler_view),
+                            getResources().getQuantityString(R.plurals.recipes_deleted, deleted, deleted),
+                            RecipeRepository.UNDO_WINDOW_MILLIS)
+                    .setAction(R.string.undo, view -> viewModel.undoDelete())
+                    .show();
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+
+        // Orden y filtros actuales (se conservan en el ViewModel al recrear la actividad)
+        RecipeListQuery listQuery = viewModel.getListQuery();
+        menu.findItem(sortMenuItemId(listQuery.getSortMode())).setChecked(true);
+        menu.findItem(R.id.action_filter_with_photo).setChecked(listQuery.isOnlyWithPhoto());
+
+        // Búsqueda mientras se escribe: la consulta se lanza cuando se deja de escribir
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search_recipes).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                scheduleSearch(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                scheduleSearch(newText, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Programa la búsqueda del texto indicado, descartando la anterior si aún no se ha lanzado.
+     * Un texto vacío vuelve a mostrar la lista completa.
+     */
+    private void scheduleSearch(String text, long delayMillis) {
+        pendingSearchText = text;
+        searchHandler.removeCallbacks(searchRunnable);
+        searchHandler.postDelayed(searchRunnable, delayMillis);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        int itemId = item.getItemId();
+        RecipeListQuery listQuery = viewModel.getListQuery();
+        if (itemId == R.id.action_sort_oldest) {
+            item.setChecked(true);
+            viewModel.setListQuery(listQuery.withSortMode(RecipeListQuery.SortMode.OLDEST));
+            return true;
+        } else if (itemId == R.id.action_sort_newest) {
+            item.setChecked(true);
+            viewModel.setListQuery(listQuery.withSortMode(RecipeListQuery.SortMode.NEWEST));
+            return true;
+        } else if (itemId == R.id.action_sort_title) {
+            item.setChecked(true);
+            viewModel.setListQuery(listQuery.withSortMode(RecipeListQuery.SortMode.TITLE));
+            return true;
+        } else if (itemId == R.id.action_sort_modified) {
+            item.setChecked(true);
+            viewModel.setListQuery(listQuery.withSortMode(RecipeListQuery.SortMode.MODIFIED));
+            return true;
+        } else if (itemId == R.id.action_filter_with_photo) {
+            item.setChecked(!item.isChecked());
+            viewModel.setListQuery(listQuery.withOnlyWithPhoto(item.isChecked()));
+            return true;
+        } else if (itemId == R.id.action_filter_title_prefix) {
+            showTitlePrefixDialog();
+            return true;
+        } else if (itemId == R.id.action_export_recipes) {
+            exportRecipes();
+            return true;
+        } else if (itemId == R.id.action_import_recipes) {
+            importRecipes();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private static int sortMenuItemId(RecipeListQuery.SortMode sortMode) {
+        switch (sortMode) {
+            case NEWEST:
+                return R.id.action_sort_newest;
+            case TITLE:
+                return R.id.action_sort_title;
+            case MODIFIED:
+                return R.id.action_sort_modified;
+            default:
+                return R.id.action_sort_oldest;
+        }
+    }
+
+    /**
+     * Pide el principio del título de las recetas a mostrar. Un texto vacío quita el filtro.
+     */
+    private void showTitlePrefixDialog() {
+        EditText prefixEditText = new EditText(this);
+        prefixEditText.setSingleLine(true);
+        prefixEditText.setText(viewModel.getListQuery().getTitlePrefix());
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_title_prefix)
+                .setView(prefixEditText)
+                .setPositiveButton(android.R.string.ok, (dialog, which) -> viewModel.setListQuery(
+                        viewModel.getListQuery().withTitlePrefix(prefixEditText.getText().toString())))
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Exporta todas las recetas y sus fotos al directorio de copias de seguridad de la app.
+     */
+    private void exportRecipes() {
+        RecipeBackup backup = new RecipeBackup(this, AppDatabase.getInstance(this));
+        File directory = RecipeBackup.getDefaultDirectory(this);
+        // En su propio hilo: no ocupa un lector mientras dura
+        IoScheduler.get().job(() -> {
+            String message;
+            try {
+                int count = backup.exportTo(directory);
+                message = "Exportadas " + count + " recetas a " + directory;
+            } catch (IOException e) {
+                Log.e("MainActivity", "Error exporting recipes", e);
+                message = "Error al exportar las recetas";
+            }
+            showToast(message);
+        });
+    }
+
+    /**
+     * Importa las recetas del directorio de copias de seguridad de la app y las añade a las existentes.
+     */
+    private void importRecipes() {
+        RecipeBackup backup = new RecipeBackup(this, AppDatabase.getInstance(this));
+        File directory = RecipeBackup.getDefaultDirectory(this);
+        // En su propio hilo: lee la copia y solo escribe cada bloque de recetas en el hilo de escritura
+        IoScheduler.get().job(() -> {
+            String message;
+            try {
+                int count = backup.importFrom(directory, null);
+                message = "Importadas " + count + " recetas";
+                viewModel.getRepository().invalidateCache();
+            } catch (IOException e) {
+                Log.e("MainActivity", "Error importing recipes", e);
+                message = "Error al importar las recetas";
+            }
+            showToast(message);
+        });
+    }
+
+    private void showToast(String message) {
+        runOnUiThread(() -> Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show());
     }
 
     @Override
@@ -111,51 +395,44 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
 
     @Override
     public boolean onContextItemSelected(MenuItem item) {
-        int position = item.getOrder();
+        // La receta del menú, por su id: la lista puede haber cambiado mientras estaba abierto
+        int recipeId = mAdapter.getContextMenuRecipeId();
         switch (item.getItemId()) {
             case 0:
-                showModifyRecipeDialog(position);
+                showModifyRecipeDialog(recipeId);
                 return true;
             case 1:
                 // Eliminar la receta de la base de datos
-                Recipe recipeToDelete = recipes.get(position);
-                Executor executor = Executors.newSingleThreadExecutor();
-                executor.execute(() -> {
-                    recipeDao.deleteRecipe(recipeToDelete);
-                    loadRecipes();
-                });
+                deleteRecipes(Collections.singletonList(recipeId));
+                return true;
+            case 2:
+                // Empieza la selección múltiple con esta receta
+                mAdapter.startSelection(recipeId);
                 return true;
             default:
                 return super.onContextItemSelected(item);
         }
     }
 
-
-    private void initDatabase() {
-        AppDatabase appDatabase = Room.databaseBuilder(getApplicationContext(),
-                        AppDatabase.class,
-                        "recipe_database")
-                .build();
-        recipeDao = appDatabase.recipeDao();
-        insertExampleRecipe();
-    }
-
-    private void insertExampleRecipe() {
-        Executor executor = Executors.newSingleThreadExecutor();
-        executor.execute(new InsertExampleRecipeRunnable(recipeDao, this));
-    }
-
     /**
      * Configura el ActivityResultLauncher para capturar imágenes de la cámara.
-     * Establece el resultado de la captura de la imagen en el ImageView de vista previa.
+     * Muestra la imagen capturada en la vista previa del diálogo abierto
+     * y empieza a generar sus miniaturas en segundo plano.
      */
-    private void setupImageCaptureLauncher(ImageView previewRecipePhoto) {
+    private void setupImageCaptureLauncher() {
         captureImageLauncher = registerForActivityResult(
                 new ActivityResultContracts.TakePicture(),
                 result -> {
                     if (result) {
-                        previewRecipePhoto.setImageURI(photoUri);
+                        if (capturePreview != null) {
+                            Glide.with(MainActivity.this).load(photoUri).into(capturePreview);
+                        }
+                        pendingThumbnails = thumbnailGenerator.generate(photoFile);
                     } else {
+                        // No se ha guardado ninguna foto en el fichero creado
+                        photoUri = null;
+                        photoFile = null;
+                        pendingThumbnails = null;
                         Toast.makeText(MainActivity.this, "Error al capturar la imagen", Toast.LENGTH_SHORT).show();
                     }
                 }
@@ -163,56 +440,52 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
     }
 
     /**
-     * Método llamado cuando se hace clic en una receta en la lista.
-     * Muestra un cuadro de diálogo que muestra los detalles de la receta, incluido el título, contenido y una foto.
-     *
-     * @param title   Título de la receta.
-     * @param photo   URI de la foto de la receta. Puede ser nulo si no hay foto disponible.
-     * @param content Contenido o detalles de la receta.
+     * Olvida la foto capturada en un diálogo anterior.
      */
-    @Override
-    public void onRecipeClick(String title, Uri photo, String content) {
-
-        // Crear y mostrar el AlertDialog
-        AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(this);
-        LayoutInflater inflater = this.getLayoutInflater();
-        View dialogView = inflater.inflate(R.layout.recipe_detail_dialog, null);
-        dialogBuilder.setView(dialogView);
+    private void resetCapturedPhoto() {
+        photoUri = null;
+        photoFile = null;
+        pendingThumbnails = null;
+        capturePreview = null;
+    }
 
-        // Asignar los detalles de la receta al AlertDialog
-        TextView titleTextView = dialogView.findViewById(R.id.recipe_detail_title);
-        ImageView photoImageView = dialogView.findViewById(R.id.recipe_detail_photo);
-        TextView contentTextView = dialogView.findViewById(R.id.recipe_detail_content);
-        titleTextView.setText(title);
-        contentTextView.setText(content);
-
-        // Utiliza Glide para cargar la imagen desde la URI de cadena
-        if (photo != null) {
-            Glide.with(this)
-                    .load(Uri.parse(String.valueOf(photo)))
-                    .into(photoImageView);
-        } else {
-            // Si no hay imagen, muestra una imagen predeterminada
-            Glide.with(this)
-                    .load(R.drawable.ic_add) // Aquí debes tener un recurso de imagen predeterminada
-                    .into(photoImageView);
+    /**
+     * Guarda la receta con los datos del diálogo. La lista la muestra en el momento, antes de que
+     * se escriba en la base de datos; si no se puede guardar, vuelve a mostrar lo que había.
+     * Si se ha capturado una foto nueva, la receta se escribe cuando se han generado sus miniaturas.
+     *
+     * @param recipe Receta con los datos del diálogo, sin la foto capturada.
+     */
+    private void saveRecipe(Recipe.Builder recipe) {
+        CompletableFuture<ThumbnailGenerator.Result> thumbnails = null;
+        if (photoUri != null) {
+            // Las miniaturas de la foto anterior ya no sirven
+            recipe.setPhoto(photoUri.toString()).setThumbnail(null).setDetailPhoto(null);
+            thumbnails = pendingThumbnails;
         }
+        viewModel.saveRecipe(recipe.build(), thumbnails, () -> Toast.makeText(getApplicationContext(),
+                "No se ha podido guardar la receta", Toast.LENGTH_LONG).show());
+    }
 
-        // Mostrar el AlertDialog
-        AlertDialog alertDialog = dialogBuilder.create();
-        alertDialog.show();
-
-        // Obtener la referencia al botón de cierre y establecer el listener para cerrar el diálogo de la receta
-        ImageButton closeButton = dialogView.findViewById(R.id.btn_close);
-        closeButton.setOnClickListener(view -> alertDialog.dismiss());
+    /**
+     * Método llamado cuando se hace clic en una receta en la lista.
+     * Abre el cuadro de diálogo de detalles solo con el id: la receta completa se carga después,
+     * de la caché de recetas abiertas recientemente o fuera del hilo de la UI.
+     *
+     * @param recipeId Id de la receta pulsada.
+     */
+    @Override
+    public void onRecipeClick(int recipeId) {
+        recipeDetailDialog.show(recipeId);
     }
 
     /**
      * Muestra un cuadro de diálogo para agregar una nueva receta.
      * Permite al usuario ingresar los detalles de la receta y capturar una foto con la cámara.
      */
-    @SuppressLint({"QueryPermissionsNeeded", "NotifyDataSetChanged"})
+    @SuppressLint("QueryPermissionsNeeded")
     private void showAddRecipeDialog() {
+        resetCapturedPhoto();
         AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(this);
         LayoutInflater inflater = this.getLayoutInflater();
         View dialogView = inflater.inflate(R.layout.add_recipe_dialog, null);
@@ -244,26 +517,13 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
             if (checkDataCompleteness(recipeTitle, recipeResume, recipeDetails))
                 return; // Detener el proceso de guardado si falta información obligatoria
 
-            Recipe newRecipe = new Recipe();
-            newRecipe.setTitle(recipeTitle);
-            newRecipe.setResume(recipeResume);
-            newRecipe.setDetails(recipeDetails);
-            if (photoUri != null) {
-                newRecipe.setPhoto(photoUri.toString());
-            } else {
-                Uri defaultPhotoUri = Uri.parse("content://" + getPackageName() + "/res/drawable/ic_add.png");
-                newRecipe.setPhoto(defaultPhotoUri.toString());
-            }
-
-            Executor executor = Executors.newSingleThreadExecutor();
-            executor.execute(() -> {
-                recipeDao.insertRecipe(newRecipe);
-                loadRecipes();
-            });
+            Recipe.Builder newRecipe = new Recipe.Builder()
+                    .setTitle(recipeTitle)
+                    .setResume(recipeResume)
+                    .setDetails(recipeDetails);
+            // Sin foto, la lista y los detalles muestran la imagen por defecto
 
-            int newPos = recipes.size() - 1;
-            mAdapter.notifyItemInserted(newPos);
-            mAdapter.notifyDataSetChanged();
+            saveRecipe(newRecipe);
 
             alertDialog.dismiss();
         });
@@ -274,25 +534,38 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
         addRecipePhoto.setOnClickListener(view -> {
             Intent takePictureIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
             if (takePictureIntent.resolveActivity(getPackageManager()) != null) {
-                File photoFile = createImageFile();
+                photoFile = createImageFile();
                 if (photoFile != null) {
+                    pendingThumbnails = null;
                     photoUri = CustomFileProvider.getUriForFile(
                             MainActivity.this,
-                            "net.estemon.codelabs111_recyclerrecipes.fileprovider",
+                            CustomFileProvider.AUTHORITY,
                             photoFile
                     );
                     takePictureIntent.putExtra(MediaStore.EXTRA_OUTPUT, photoUri);
+                    capturePreview = previewRecipePhoto;
                     captureImageLauncher.launch(photoUri);
-                    Glide.with(MainActivity.this)
-                            .load(photoUri)
-                            .into(previewRecipePhoto);
                 }
             }
         });
     }
 
+    /**
+     * Carga la receta completa (de la caché o fuera del hilo de la UI) y después muestra el
+     * cuadro de diálogo para modificarla.
+     */
+    private void showModifyRecipeDialog(int recipeId) {
+        viewModel.loadRecipe(recipeId, recipe -> {
+            // La receta se ha eliminado mientras tanto
+            if (recipe != null && !isFinishing()) {
+                showModifyRecipeDialog(recipe);
+            }
+        });
+    }
+
     @SuppressLint("QueryPermissionsNeeded")
-    private void showModifyRecipeDialog(int position) {
+    private void showModifyRecipeDialog(Recipe recipe) {
+        resetCapturedPhoto();
         AlertDialog.Builder dialogBuilder = new AlertDialog.Builder(this);
         LayoutInflater inflater = this.getLayoutInflater();
         View dialogView = inflater.inflate(R.layout.add_recipe_dialog, null);
@@ -304,12 +577,11 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
         Button addRecipePhoto = dialogView.findViewById(R.id.add_recipe_photo);
         final ImageView previewRecipePhoto = dialogView.findViewById(R.id.preview_recipe_photo);
 
-        Recipe recipe = recipes.get(position);
         addRecipeTitle.setText(recipe.getTitle());
         addRecipeResume.setText(recipe.getResume());
         addRecipeDetails.setText(recipe.getDetails());
         Glide.with(MainActivity.this)
-                .load(photoUri)
+                .load(recipe.getDetailPhoto() != null ? recipe.getDetailPhoto() : recipe.getPhoto())
                 .into(previewRecipePhoto);
 
         addRecipePhotoAction(addRecipePhoto, previewRecipePhoto);
@@ -332,20 +604,14 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
             if (checkDataCompleteness(recipeTitle, recipeResume, recipeDetails))
                 return; // Detener el proceso de guardado si falta información obligatoria
 
-            recipe.setTitle(recipeTitle);
-            recipe.setResume(recipeResume);
-            recipe.setDetails(recipeDetails);
+            // La receta cargada no se modifica: se guarda una copia con los cambios.
+            // La foto solo se sustituye si se ha tomado una nueva
+            saveRecipe(recipe.toBuilder()
+                    .setTitle(recipeTitle)
+                    .setResume(recipeResume)
+                    .setDetails(recipeDetails));
 
-            // Update the photo URI only if the user has taken a new photo
-            if (photoUri != null) {
-                recipe.setPhoto(photoUri.toString());
-            }
-
-            Executor executor = Executors.newSingleThreadExecutor();
-            executor.execute(() -> {
-                recipeDao.insertRecipe(recipe);
-                loadRecipes();
-            });
+            alertDialog.dismiss();
         });
 
 
@@ -359,17 +625,17 @@ public class MainActivity extends AppCompatActivity implements RecipeAdapter.OnR
         return false;
     }
 
-    @SuppressLint("NotifyDataSetChanged")
-    void loadRecipes() {
-        Executor executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            List<Recipe> recipeList = recipeDao.getAllRecipes();
-            runOnUiThread(() -> {
-                recipes.clear();
-                recipes.addAll(recipeList);
-                mAdapter.notifyDataSetChanged();
-            });
-        });
+    private void showRecipes(List<RecipeListItem> recipeList) {
+        boolean firstPage = mAdapter.getCurrentList().isEmpty() && !recipeList.isEmpty();
+        mAdapter.submitList(recipeList, firstPage ? this::onFirstPageShown : null);
+    }
+
+    /**
+     * Registra el tiempo de arranque hasta que se muestra la primera página de recetas.
+     */
+    private void onFirstPageShown() {
+        StartupMetrics.onFirstPageShown();
+        reportFullyDrawn();
     }
 
     /**
@@ -0,0 +1,212 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the hot paths of the app (database calls, binds of the list, photo loads
+ * and the queues of {@link IoScheduler}), readable in process with {@link #snapshot()}.
+ * <p>
+ * Timed sections are also emitted as {@link Trace} sections with the same name, so they show up
+ * in systrace and Perfetto:
+ * <pre>
+ * long start = Metrics.begin(NAME);
+ * try {
+ *     ...
+ * } finally {
+ *     Metrics.end(NAME, start);
+ * }
+ * </pre>
+ * Metrics are disabled by default. While disabled, {@link #begin} and {@link #record} only read a
+ * volatile flag: nothing is measured, traced or allocated. While enabled, recording a value is a
+ * map lookup and a few atomic increments, without allocations either.
+ */
+public final class Metrics {
+
+    // Sections longer than this are rejected by Trace
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private static volatile boolean enabled;
+
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops measuring. The values recorded so far are kept.
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Starts a timed section on the current thread.
+     *
+     * @param name Name of the histogram and of the trace section, up to 127 characters.
+     * @return The start time to hand over to {@link #end}, or 0 if the metrics are disabled.
+     */
+    public static long begin(String name) {
+        if (!enabled) {
+            return 0;
+        }
+        Trace.beginSection(name);
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the section started by {@link #begin} on the same thread and records its duration.
+     *
+     * @param name       The same name given to {@link #begin}.
+     * @param startNanos The value returned by {@link #begin}.
+     */
+    public static void end(String name, long startNanos) {
+        if (startNanos == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        Trace.endSection();
+        histogram(name).record(nanos);
+    }
+
+    /**
+     * Records a duration measured elsewhere, for example across threads.
+     *
+     * @param name  Name of the histogram.
+     * @param nanos The duration, in nanoseconds.
+     */
+    public static void record(String name, long nanos) {
+        if (enabled) {
+            histogram(name).record(nanos);
+        }
+    }
+
+    /**
+     * Returns the values recorded so far, by histogram name.
+     */
+    @NonNull
+    public static Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets every recorded value.
+     */
+    public static void reset() {
+        histograms.clear();
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            if (name.length() > MAX_SECTION_NAME_LENGTH) {
+                throw new IllegalArgumentException("Metric name too long: " + name);
+            }
+            histogram = histograms.computeIfAbsent(name, key -> new Histogram());
+        }
+        return histogram;
+    }
+
+    /**
+     * Histogram with one bucket per power of two nanoseconds: bucket {@code i} counts the values
+     * in {@code [2^(i-1), 2^i)}. The percentiles are the upper bound of their bucket, so they are
+     * at most twice the real value, which is enough to tell apart 1ms from 16ms.
+     */
+    static final class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(Math.min(BUCKETS - Long.numberOfLeadingZeros(nanos), BUCKETS - 1));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long current;
+            while (nanos > (current = maxNanos.get())) {
+                if (maxNanos.compareAndSet(current, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new Snapshot(count.get(), totalNanos.get(), maxNanos.get(), counts);
+        }
+    }
+
+    /**
+     * Values of a histogram at the moment {@link #snapshot()} was called.
+     */
+    public static final class Snapshot {
+
+        public final long count;
+        public final long totalNanos;
+        public final long maxNanos;
+        private final long[] buckets;
+
+        Snapshot(long count, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Approximate percentile: the upper bound of the bucket that holds it, never above the maximum.
+         *
+         * @param percentile Between 0 and 100.
+         */
+        public long percentileNanos(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : Math.min((1L << i) - 1, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "count=%d mean=%.3fms p50=%.3fms p95=%.3fms max=%.3fms",
+                    count, meanNanos() / 1e6, percentileNanos(50) / 1e6, percentileNanos(95) / 1e6,
+                    maxNanos / 1e6);
+        }
+    }
+}
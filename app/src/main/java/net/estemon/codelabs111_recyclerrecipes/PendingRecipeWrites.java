@@ -0,0 +1,186 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recipes saved from the UI that the list shows before the database has them (optimistic writes).
+ * <p>
+ * A write is shown as soon as it is {@link #apply applied}: an edited recipe replaces its row,
+ * and a new one, with a temporary negative id, is placed where the list order puts it. When the
+ * write finishes it is {@link #confirm confirmed} with the saved recipe and its real id, and kept
+ * until the list loaded from the database shows it (so the row doesn't go back to its old values
+ * in between), or {@link #rollback rolled back} if it failed, which shows the list as it is in
+ * the database again.
+ * <p>
+ * It is used by {@link RecipePager} and, like it, only from the UI thread.
+ */
+final class PendingRecipeWrites {
+
+    private static final class Entry {
+
+        final RecipeListItem recipe;
+        final long version;
+        final boolean confirmed;
+
+        Entry(RecipeListItem recipe, long version, boolean confirmed) {
+            this.recipe = recipe;
+            this.version = version;
+            this.confirmed = confirmed;
+        }
+    }
+
+    // By id of the recipe shown: temporary for the inserts until they are confirmed
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+
+    private long lastVersion;
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Shows the recipe being written, replacing an earlier write of the same recipe.
+     *
+     * @param recipe The recipe as it is written, with a temporary negative id if it is new.
+     * @return The version of the write, to confirm it or roll it back.
+     */
+    long apply(RecipeListItem recipe) {
+        long version = ++lastVersion;
+        entries.put(recipe.getId(), new Entry(recipe, version, false));
+        return version;
+    }
+
+    /**
+     * Replaces the recipe being written by the saved one, with its real id. It is ignored if the
+     * same recipe has been written again since.
+     *
+     * @param id      The id given to {@link #apply}.
+     * @param version The version returned by {@link #apply}.
+     * @param saved   The recipe as it has been saved.
+     */
+    void confirm(int id, long version, RecipeListItem saved) {
+        Entry entry = entries.get(id);
+        if (entry != null && entry.version == version) {
+            entries.remove(id);
+            entries.put(saved.getId(), new Entry(saved, version, true));
+        }
+    }
+
+    /**
+     * Stops showing a write that failed. It is ignored if the same recipe has been written again since.
+     *
+     * @return Whether the write was still shown.
+     */
+    boolean rollback(int id, long version) {
+        Entry entry = entries.get(id);
+        if (entry != null && entry.version == version) {
+            entries.remove(id);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops showing the writes of the given recipes, for example because they have been deleted.
+     *
+     * @return Whether any of them was shown.
+     */
+    boolean forget(Collection<Integer> ids) {
+        return entries.keySet().removeAll(ids);
+    }
+
+    /**
+     * Forgets the confirmed writes, when the list is loaded again from the database.
+     */
+    void clearConfirmed() {
+        entries.values().removeIf(entry -> entry.confirmed);
+    }
+
+    /**
+     * Forgets the confirmed writes that the list loaded from the database already shows: the
+     * same recipe, saved at the same time or later.
+     *
+     * @return Whether any write was forgotten.
+     */
+    boolean prune(List<RecipeListItem> loaded) {
+        if (entries.isEmpty()) {
+            return false;
+        }
+        boolean pruned = false;
+        for (RecipeListItem recipe : loaded) {
+            Entry entry = entries.get(recipe.getId());
+            if (entry != null && entry.confirmed && recipe.getModifiedAt() >= entry.recipe.getModifiedAt()) {
+                entries.remove(recipe.getId());
+                pruned = true;
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * Forgets the confirmed writes that {@link #merge} doesn't show: edits of recipes that are
+     * not loaded, and new recipes that go out of the loaded window or are filtered out. They are
+     * in the database, and the page that has them shows them when it is loaded.
+     *
+     * @return Whether any write was forgotten.
+     */
+    boolean pruneHidden(List<RecipeListItem> loaded, @Nullable RecipeListQuery listQuery,
+                        boolean startLoaded, boolean endLoaded) {
+        if (entries.isEmpty()) {
+            return false;
+        }
+        Set<Integer> loadedIds = new HashSet<>();
+        for (RecipeListItem recipe : loaded) {
+            loadedIds.add(recipe.getId());
+        }
+        return entries.values().removeIf(entry -> entry.confirmed
+                && !loadedIds.contains(entry.recipe.getId())
+                && (listQuery == null || !listQuery.matches(entry.recipe)
+                || listQuery.positionOfNew(loaded, entry.recipe, startLoaded, endLoaded) < 0));
+    }
+
+    /**
+     * Returns the loaded list with the writes applied. A new recipe is only inserted where the
+     * loaded window has its place: one that goes before or after it is not shown.
+     *
+     * @param loaded      The window of the list loaded from the database.
+     * @param listQuery   The order and filters of the list, to place the new recipes, or null to
+     *                    show only the edits (search results, for example).
+     * @param startLoaded Whether the window starts at the top of the list.
+     * @param endLoaded   Whether the window ends at the bottom of the list.
+     */
+    List<RecipeListItem> merge(List<RecipeListItem> loaded, @Nullable RecipeListQuery listQuery,
+                               boolean startLoaded, boolean endLoaded) {
+        List<RecipeListItem> merged = new ArrayList<>(loaded.size() + entries.size());
+        Set<Integer> shown = new HashSet<>();
+        for (RecipeListItem recipe : loaded) {
+            Entry entry = entries.get(recipe.getId());
+            if (entry != null) {
+                merged.add(entry.recipe);
+                shown.add(recipe.getId());
+            } else {
+                merged.add(recipe);
+            }
+        }
+        if (listQuery != null) {
+            for (Entry entry : entries.values()) {
+                RecipeListItem recipe = entry.recipe;
+                if (!shown.contains(recipe.getId()) && listQuery.matches(recipe)) {
+                    int position = listQuery.positionOfNew(merged, recipe, startLoaded, endLoaded);
+                    if (position >= 0) {
+                        merged.add(position, recipe);
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+}
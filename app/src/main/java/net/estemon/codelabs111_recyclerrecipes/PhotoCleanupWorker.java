@@ -0,0 +1,70 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.os.Environment;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link PhotoGarbageCollector} once a day, while the device is idle and the battery
+ * is not low. The output data of the work reports the deleted files and reclaimed bytes.
+ * <p>
+ * The work runs on a thread of WorkManager, which waits while the references are read on the
+ * reader lane of {@link IoScheduler}, like every other query of the app.
+ */
+public class PhotoCleanupWorker extends Worker {
+
+    private static final String WORK_NAME = "photo_cleanup";
+
+    public static final String KEY_DELETED_FILES = "deleted_files";
+    public static final String KEY_RECLAIMED_BYTES = "reclaimed_bytes";
+
+    public PhotoCleanupWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Schedules the daily cleanup, keeping the existing schedule if there is one.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(PhotoCleanupWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        File photosDir = getApplicationContext().getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        if (photosDir == null) {
+            // External storage not available right now
+            return Result.retry();
+        }
+        PhotoGarbageCollector.Result result = new PhotoGarbageCollector(
+                AppDatabase.getInstance(getApplicationContext()).recipeDao(),
+                photosDir,
+                PhotoGarbageCollector.DEFAULT_GRACE_PERIOD_MILLIS,
+                IoScheduler.get().reads()
+        ).collect(System.currentTimeMillis());
+        return Result.success(new Data.Builder()
+                .putInt(KEY_DELETED_FILES, result.deletedFiles)
+                .putLong(KEY_RECLAIMED_BYTES, result.reclaimedBytes)
+                .build());
+    }
+}
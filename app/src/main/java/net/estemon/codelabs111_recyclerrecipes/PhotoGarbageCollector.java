@@ -0,0 +1,177 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the photo files that no recipe references anymore: photos captured in a dialog that
+ * was then cancelled, photos of deleted recipes and their thumbnails.
+ * <p>
+ * The photo columns of the recipes are read in a single pass over a cursor, keeping only the
+ * names of the files they point to, and then every file of the photos directory (the one shared
+ * through {@link CustomFileProvider}) and of its {@link PhotoStore} that is not among them is
+ * deleted. Files younger than the
+ * grace period are always kept: they can belong to a recipe that is being edited or saved.
+ * <p>
+ * The references are read on the given reader executor, usually {@link IoScheduler#reads()}, and
+ * the collection waits for them; the disk is listed and cleaned on the calling thread.
+ */
+public class PhotoGarbageCollector {
+
+    private static final String TAG = "PhotoGarbageCollector";
+
+    public static final long DEFAULT_GRACE_PERIOD_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final RecipeDao recipeDao;
+    private final File photosDir;
+    private final long gracePeriodMillis;
+    private final Executor reader;
+
+    /**
+     * Result of a collection.
+     */
+    public static final class Result {
+
+        public final int deletedFiles;
+        public final long reclaimedBytes;
+        public final int keptFiles;
+
+        Result(int deletedFiles, long reclaimedBytes, int keptFiles) {
+            this.deletedFiles = deletedFiles;
+            this.reclaimedBytes = reclaimedBytes;
+            this.keptFiles = keptFiles;
+        }
+    }
+
+    /**
+     * Collector that reads the references on the calling thread.
+     */
+    public PhotoGarbageCollector(RecipeDao recipeDao, File photosDir, long gracePeriodMillis) {
+        this(recipeDao, photosDir, gracePeriodMillis, Runnable::run);
+    }
+
+    /**
+     * @param recipeDao         DAO to read the photos in use.
+     * @param photosDir         The directory with the photos, see {@code res/xml/file_paths.xml}.
+     * @param gracePeriodMillis Files modified less than this ago are never deleted.
+     * @param reader            Runs the query of the references.
+     */
+    public PhotoGarbageCollector(RecipeDao recipeDao, File photosDir, long gracePeriodMillis, Executor reader) {
+        this.recipeDao = recipeDao;
+        this.photosDir = photosDir;
+        this.gracePeriodMillis = gracePeriodMillis;
+        this.reader = reader;
+    }
+
+    /**
+     * Deletes the orphan photos. Reads the database and the disk, never call it on the UI thread.
+     *
+     * @param nowMillis Current time, in milliseconds since the epoch.
+     */
+    @WorkerThread
+    public Result collect(long nowMillis) {
+        List<File> files = listFiles();
+        if (files.isEmpty()) {
+            return new Result(0, 0, 0);
+        }
+        // Listed before reading the references: a file created afterwards is always kept
+        Set<String> referenced = readReferencedFileNames();
+        int deleted = 0;
+        int kept = 0;
+        long reclaimed = 0;
+        for (File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+            if (referenced.contains(file.getName()) || nowMillis - file.lastModified() < gracePeriodMillis) {
+                kept++;
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                deleted++;
+                reclaimed += length;
+            } else {
+                Log.w(TAG, "Can't delete " + file);
+            }
+        }
+        Log.i(TAG, "Deleted " + deleted + " orphan photos (" + reclaimed / 1024 + "KB), kept " + kept);
+        return new Result(deleted, reclaimed, kept);
+    }
+
+    /**
+     * The files of the photos directory and of the store. Their names are unique across both: the
+     * captures are named after their date and the photos of the store after their hash.
+     */
+    private List<File> listFiles() {
+        List<File> files = new ArrayList<>();
+        File[] photos = photosDir.listFiles();
+        if (photos != null) {
+            files.addAll(Arrays.asList(photos));
+        }
+        File[] stored = new File(photosDir, PhotoStore.DIRECTORY).listFiles();
+        if (stored != null) {
+            files.addAll(Arrays.asList(stored));
+        }
+        return files;
+    }
+
+    /**
+     * Reads the references on the reader executor, and waits for them.
+     */
+    private Set<String> readReferencedFileNames() {
+        try {
+            return CompletableFuture.supplyAsync(this::queryReferencedFileNames, reader).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private Set<String> queryReferencedFileNames() {
+        Set<String> names = new HashSet<>();
+        try (Cursor cursor = recipeDao.getPhotoReferencesCursor()) {
+            int columns = cursor.getColumnCount();
+            while (cursor.moveToNext()) {
+                for (int column = 0; column < columns; column++) {
+                    String name = fileName(cursor.getString(column));
+                    if (name != null) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Name of the file of a {@link CustomFileProvider} URI, or null for any other value.
+     * The names of the files are unique across the shared directories, so the name is enough to
+     * identify the file.
+     */
+    @Nullable
+    static String fileName(@Nullable String photo) {
+        if (photo == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(photo);
+        if (!"content".equals(uri.getScheme()) || !CustomFileProvider.AUTHORITY.equals(uri.getAuthority())) {
+            return null;
+        }
+        return uri.getLastPathSegment();
+    }
+}
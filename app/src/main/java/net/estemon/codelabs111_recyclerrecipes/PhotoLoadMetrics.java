@@ -0,0 +1,71 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+/**
+ * Records in {@link Metrics} how long the photos of one screen take to load with Glide, from the
+ * moment the request is started, under {@code <prefix>.<data source>}: {@code MEMORY_CACHE},
+ * {@code RESOURCE_DISK_CACHE}, {@code LOCAL}... Failed loads are recorded under {@code <prefix>.FAILED}.
+ * <p>
+ * The loads run on Glide's threads and can't be traced as a section of the calling thread, so
+ * they are only recorded in the histograms.
+ */
+public class PhotoLoadMetrics {
+
+    private final String[] sourceNames = new String[DataSource.values().length];
+    private final String failedName;
+
+    /**
+     * @param prefix Prefix of the histograms, such as {@code "Glide.list"}.
+     */
+    public PhotoLoadMetrics(String prefix) {
+        for (DataSource source : DataSource.values()) {
+            sourceNames[source.ordinal()] = prefix + "." + source.name();
+        }
+        failedName = prefix + ".FAILED";
+    }
+
+    /**
+     * Adds a listener that measures the request when the metrics are enabled. Otherwise the
+     * request is returned untouched and nothing is allocated.
+     *
+     * @param request The request, just before it is started.
+     */
+    public RequestBuilder<Drawable> listen(RequestBuilder<Drawable> request) {
+        if (!Metrics.isEnabled()) {
+            return request;
+        }
+        return request.addListener(new Listener(System.nanoTime()));
+    }
+
+    private class Listener implements RequestListener<Drawable> {
+
+        private final long startNanos;
+
+        Listener(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target,
+                                    boolean isFirstResource) {
+            Metrics.record(failedName, System.nanoTime() - startNanos);
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                       DataSource dataSource, boolean isFirstResource) {
+            Metrics.record(sourceNames[dataSource.ordinal()], System.nanoTime() - startNanos);
+            return false;
+        }
+    }
+}
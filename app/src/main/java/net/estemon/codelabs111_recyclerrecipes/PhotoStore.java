@@ -0,0 +1,204 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.os.Environment;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed storage of the recipe photos.
+ * <p>
+ * Every photo is stored once, in the {@code cas} directory of the photos shared through
+ * {@link CustomFileProvider}, in a file named after the SHA-256 of its bytes. The same picture
+ * captured or imported twice, or shared by several recipes, is a single file with a single URI:
+ * it takes room once and Glide finds it under the same cache key. The bytes behind a URI never
+ * change, so that key never has to be invalidated either. The copies made by
+ * {@link ThumbnailGenerator} are named after the photo, so they are also created once per photo.
+ * <p>
+ * The references to a photo, and to its copies, are counted in the {@code recipes} table through
+ * the indices of its photo columns ({@link RecipeDao#countPhotoReferences}), and
+ * {@link #releaseIfUnused} deletes a photo as soon as no recipe uses it. Everything else that is left behind (the files
+ * written by the camera, the photos of recipes deleted while the app was not running...) is
+ * deleted by {@link PhotoGarbageCollector}.
+ */
+public class PhotoStore {
+
+    private static final String TAG = "PhotoStore";
+
+    /**
+     * Directory of the store, inside the photos directory.
+     */
+    static final String DIRECTORY = "cas";
+
+    private static final String EXTENSION = ".jpg";
+    private static final Pattern PHOTO_NAME = Pattern.compile("[0-9a-f]{64}\\.jpg");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final Function<File, String> toUri;
+
+    /**
+     * A photo of the store.
+     */
+    public static final class Photo {
+
+        public final File file;
+        public final String uri;
+
+        Photo(File file, String uri) {
+            this.file = file;
+            this.uri = uri;
+        }
+    }
+
+    /**
+     * Returns the store of the app, or null if the external storage is not available.
+     */
+    @Nullable
+    public static PhotoStore create(Context context) {
+        File photosDir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        if (photosDir == null) {
+            return null;
+        }
+        Context appContext = context.getApplicationContext();
+        return new PhotoStore(new File(photosDir, DIRECTORY), file ->
+                CustomFileProvider.getUriForFile(appContext, CustomFileProvider.AUTHORITY, file).toString());
+    }
+
+    /**
+     * @param directory The directory of the store.
+     * @param toUri     Returns the URI shared for a file of the store.
+     */
+    PhotoStore(File directory, Function<File, String> toUri) {
+        this.directory = directory;
+        this.toUri = toUri;
+    }
+
+    /**
+     * Adds a photo to the store, unless it already has one with the same bytes.
+     * The source file is left as it is: a capture is still shown from its own file until the
+     * recipe is saved, and is deleted afterwards by {@link PhotoGarbageCollector}.
+     *
+     * @param source The photo to add.
+     * @return The photo of the store with the same bytes.
+     */
+    @WorkerThread
+    public Photo add(File source) throws IOException {
+        File target = new File(directory, hash(source) + EXTENSION);
+        if (!target.isFile()) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Can't create " + directory);
+            }
+            // Written under another name first, so a photo of the store is never incomplete
+            File partial = new File(directory, target.getName() + ".partial");
+            copy(source, partial);
+            if (!partial.renameTo(target)) {
+                //noinspection ResultOfMethodCallIgnored
+                partial.delete();
+                throw new IOException("Can't move " + partial + " to " + target);
+            }
+        }
+        return new Photo(target, toUri.apply(target));
+    }
+
+    /**
+     * Deletes a photo of the store, and its copies, if no recipe references it anymore. It must
+     * run on the writer thread of {@link IoScheduler}, after the transaction that removed the
+     * reference has committed: the count is not part of that transaction, but the writes run one
+     * after the other on that thread, so no recipe can be saved with the photo between the count
+     * and the deletion.
+     *
+     * @param recipeDao DAO to count the references.
+     * @param photo     The photo of a recipe; photos that are not in the store are ignored.
+     * @return Whether the photo has been deleted.
+     */
+    @WorkerThread
+    public boolean releaseIfUnused(RecipeDao recipeDao, @Nullable String photo) {
+        File file = fileOf(photo);
+        if (file == null) {
+            return false;
+        }
+        List<File> copies = ThumbnailGenerator.copiesOf(file);
+        List<String> copyUris = new ArrayList<>(copies.size());
+        for (File copy : copies) {
+            copyUris.add(toUri.apply(copy));
+        }
+        if (recipeDao.countPhotoReferences(photo, copyUris) > 0) {
+            return false;
+        }
+        for (File copy : copies) {
+            //noinspection ResultOfMethodCallIgnored
+            copy.delete();
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Can't delete " + file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the file of a photo of the store, or null if the photo is somewhere else.
+     */
+    @Nullable
+    File fileOf(@Nullable String photo) {
+        String name = PhotoGarbageCollector.fileName(photo);
+        if (name == null || !PHOTO_NAME.matcher(name).matches()) {
+            return null;
+        }
+        File file = new File(directory, name);
+        return toUri.apply(file).equals(photo) ? file : null;
+    }
+
+    /**
+     * SHA-256 of the bytes of the file, in hexadecimal.
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every Android version has it
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static void copy(File source, File target) throws IOException {
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+}
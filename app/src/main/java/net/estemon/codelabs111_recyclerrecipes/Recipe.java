@@ -1,56 +1,180 @@
 package net.estemon.codelabs111_recyclerrecipes;
 
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "recipes")
-public class Recipe {
+/**
+ * A complete recipe, as stored in the {@code recipes} table.
+ * <p>
+ * It is immutable: a change is a new snapshot built with {@link #toBuilder()}, so the same
+ * instance can be cached, written on a background thread and shown in the list at the same time.
+ */
+// The indices back the sort modes and filters of RecipeListQuery, and the photo reference counts
+@Entity(tableName = "recipes",
+        indices = {@Index("title"), @Index("modifiedAt"), @Index("photo"), @Index("thumbnail"), @Index("detailPhoto")})
+public final class Recipe {
 
     @PrimaryKey (autoGenerate = true)
-    private int id;
+    private final int id;
 
-    private String title;
-    private String resume;
-    private String details;
-    private String photo;
+    // Never null, see the constructor; the column stays nullable for the rows of older versions
+    private final String title;
+    private final String resume;
+    private final String details;
+    private final String photo;
 
-    public int getId() {
-        return id;
-    }
+    // Copies of the photo sized for the list and for the detail dialog (see ThumbnailGenerator)
+    private final String thumbnail;
+    private final String detailPhoto;
 
-    public void setId(int id) {
+    // Time of the last save, in milliseconds since the epoch (0 for recipes older than the column)
+    @ColumnInfo(defaultValue = "0")
+    private final long modifiedAt;
+
+    /**
+     * Used by Room; the app builds recipes with {@link Builder}. A null title, written by older
+     * versions, is read and written back as an empty one.
+     */
+    public Recipe(int id, String title, String resume, String details, String photo, String thumbnail,
+                  String detailPhoto, long modifiedAt) {
         this.id = id;
+        this.title = title != null ? title : "";
+        this.resume = resume;
+        this.details = details;
+        this.photo = photo;
+        this.thumbnail = thumbnail;
+        this.detailPhoto = detailPhoto;
+        this.modifiedAt = modifiedAt;
     }
 
-    public String getTitle() {
-        return title;
+    public int getId() {
+        return id;
     }
 
-    public void setTitle(String title) {
-        this.title = title;
+    public String getTitle() {
+        return title;
     }
 
     public String getResume() {
         return resume;
     }
 
-    public void setResume(String resume) {
-        this.resume = resume;
-    }
-
     public String getDetails() {
         return details;
     }
 
-    public void setDetails(String details) {
-        this.details = details;
-    }
-
     public String getPhoto() {
         return photo;
     }
 
-    public void setPhoto(String photo) {
-        this.photo = photo;
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    public String getDetailPhoto() {
+        return detailPhoto;
+    }
+
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    /**
+     * Returns the same recipe with another id, for example the one generated when it was inserted.
+     */
+    public Recipe withId(int id) {
+        return id == this.id ? this : toBuilder().setId(id).build();
+    }
+
+    /**
+     * Returns a builder that starts with the values of this recipe.
+     */
+    @NonNull
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Returns the columns of this recipe shown in the list.
+     */
+    @NonNull
+    public RecipeListItem toListItem() {
+        return new RecipeListItem(id, title, resume, photo, thumbnail, modifiedAt);
+    }
+
+    /**
+     * Builds {@link Recipe} snapshots. A recipe built with id 0 gets a new id when it is inserted.
+     */
+    public static final class Builder {
+
+        private int id;
+        private String title;
+        private String resume;
+        private String details;
+        private String photo;
+        private String thumbnail;
+        private String detailPhoto;
+        private long modifiedAt;
+
+        public Builder() {
+        }
+
+        private Builder(Recipe recipe) {
+            id = recipe.id;
+            title = recipe.title;
+            resume = recipe.resume;
+            details = recipe.details;
+            photo = recipe.photo;
+            thumbnail = recipe.thumbnail;
+            detailPhoto = recipe.detailPhoto;
+            modifiedAt = recipe.modifiedAt;
+        }
+
+        public Builder setId(int id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public Builder setResume(String resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        public Builder setDetails(String details) {
+            this.details = details;
+            return this;
+        }
+
+        public Builder setPhoto(String photo) {
+            this.photo = photo;
+            return this;
+        }
+
+        public Builder setThumbnail(String thumbnail) {
+            this.thumbnail = thumbnail;
+            return this;
+        }
+
+        public Builder setDetailPhoto(String detailPhoto) {
+            this.detailPhoto = detailPhoto;
+            return this;
+        }
+
+        public Builder setModifiedAt(long modifiedAt) {
+            this.modifiedAt = modifiedAt;
+            return this;
+        }
+
+        public Recipe build() {
+            return new Recipe(id, title, resume, details, photo, thumbnail, detailPhoto, modifiedAt);
+        }
     }
 }
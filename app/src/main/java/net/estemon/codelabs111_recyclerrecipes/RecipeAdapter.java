@@ -1,8 +1,8 @@
 package net.estemon.codelabs111_recyclerrecipes;
 
-import android.annotation.SuppressLint;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.util.Log;
+import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,29 +11,224 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Adapter class for displaying recipes in a RecyclerView.
+ * <p>
+ * New lists are handed over with {@link #submitList(List)}: the differences with the current
+ * list are computed on a background thread and only the rows that actually changed are
+ * notified (and rebound) afterwards.
+ * <p>
+ * It is also the {@link ListPreloader.PreloadModelProvider} of the list: the photos of the rows
+ * about to come on screen are loaded with exactly the same request (same size and
+ * transformation) that {@link #onBindViewHolder} will use, so the bind finds them in memory.
+ * <p>
+ * In selection mode ({@link #startSelection(int)}) a click selects or deselects the row instead
+ * of opening it. The selection is kept by recipe id, so it survives the diffs of the list, and a
+ * change of selection only rebinds the activated state of the row.
  */
-public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHolder> {
+public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHolder>
+        implements ListPreloader.PreloadModelProvider<RecipeListItem> {
 
-    private final List<Recipe> recipes;
+    /**
+     * Identifies the rows by recipe id and compares their contents with
+     * {@link RecipeListItem#equals(Object)}.
+     */
+    static final DiffUtil.ItemCallback<RecipeListItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<RecipeListItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RecipeListItem oldItem, @NonNull RecipeListItem newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull RecipeListItem oldItem, @NonNull RecipeListItem newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    // Payload of a change that only affects the selected state of the row
+    private static final Object SELECTION_PAYLOAD = new Object();
+
+    private static final String CREATE_VIEW_HOLDER = "RecipeAdapter.onCreateViewHolder";
+    private static final String BIND_VIEW_HOLDER = "RecipeAdapter.onBindViewHolder";
+
+    // Load times of the photos of the rows, by where Glide found them
+    private static final PhotoLoadMetrics PHOTO_LOAD_METRICS = new PhotoLoadMetrics("Glide.list");
+
+    private final AsyncListDiffer<RecipeListItem> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
 
     // Interface to handle clicks in the recipe elements.
     private OnRecipeClickListener recipeClickListener;
 
+    private OnSelectionChangedListener selectionChangedListener;
+
+    // Ids of the selected recipes, and whether a click selects instead of opening
+    private final SparseBooleanArray selectedIds = new SparseBooleanArray();
+    private boolean selectionMode;
+    // Recipe of the last context menu, see getContextMenuRecipeId()
+    private int contextMenuRecipeId;
+
+    private final RequestManager requestManager;
+
+    // Size in pixels of the recipe_photo view, used for every photo request
+    private final int photoSize;
+
     /**
      * Constructor for the RecipeAdapter.
+     * The ids of the recipes are stable, so RecyclerView can keep track of the rows across updates.
+     *
+     * @param requestManager The Glide request manager bound to the lifecycle of the list.
+     * @param photoSize      The size in pixels of the photo of the rows.
+     */
+    public RecipeAdapter(RequestManager requestManager, int photoSize) {
+        this.requestManager = requestManager;
+        this.photoSize = photoSize;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Submits a new list of recipes to be diffed against the current one and displayed.
+     * The list must not be modified after it has been submitted.
+     *
+     * @param recipes The new list of recipes.
+     */
+    public void submitList(@Nullable List<RecipeListItem> recipes) {
+        differ.submitList(recipes);
+    }
+
+    /**
+     * Same as {@link #submitList(List)}, running the given callback once the list is displayed.
+     *
+     * @param recipes        The new list of recipes.
+     * @param commitCallback Optional runnable run on the UI thread when the list has been committed.
+     */
+    public void submitList(@Nullable List<RecipeListItem> recipes, @Nullable Runnable commitCallback) {
+        differ.submitList(recipes, commitCallback);
+    }
+
+    /**
+     * Returns the list currently displayed (the last one whose diff has been dispatched).
+     *
+     * @return The displayed list of recipes. It can't be modified.
+     */
+    @NonNull
+    public List<RecipeListItem> getCurrentList() {
+        return differ.getCurrentList();
+    }
+
+    /**
+     * Returns the recipe displayed at the given adapter position.
+     *
+     * @param position The adapter position.
+     * @return The recipe at that position.
+     */
+    public RecipeListItem getItem(int position) {
+        return differ.getCurrentList().get(position);
+    }
+
+    /**
+     * Enters selection mode, selecting the given recipe.
+     *
+     * @param recipeId The id of the recipe, which may have moved or left the list meanwhile.
+     */
+    public void startSelection(int recipeId) {
+        selectionMode = true;
+        selectedIds.put(recipeId, true);
+        int position = positionOf(recipeId);
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position, SELECTION_PAYLOAD);
+        }
+        dispatchSelectionChanged();
+    }
+
+    /**
+     * Returns the id of the recipe whose context menu was opened last. The menu items act on it
+     * rather than on a position, since the list can change while the menu is open.
+     */
+    public int getContextMenuRecipeId() {
+        return contextMenuRecipeId;
+    }
+
+    private int positionOf(int recipeId) {
+        List<RecipeListItem> recipes = differ.getCurrentList();
+        for (int i = 0; i < recipes.size(); i++) {
+            if (recipes.get(i).getId() == recipeId) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    /**
+     * Selects the recipe at the given position, or deselects it if it was selected.
+     *
+     * @param position The adapter position.
+     */
+    public void toggleSelection(int position) {
+        int id = getItem(position).getId();
+        if (selectedIds.get(id)) {
+            selectedIds.delete(id);
+        } else {
+            selectedIds.put(id, true);
+        }
+        notifyItemChanged(position, SELECTION_PAYLOAD);
+        dispatchSelectionChanged();
+    }
+
+    /**
+     * Leaves selection mode and deselects every recipe.
+     */
+    public void clearSelection() {
+        if (!selectionMode) {
+            return;
+        }
+        selectionMode = false;
+        List<RecipeListItem> recipes = differ.getCurrentList();
+        for (int position = 0; position < recipes.size(); position++) {
+            if (selectedIds.get(recipes.get(position).getId())) {
+                notifyItemChanged(position, SELECTION_PAYLOAD);
+            }
+        }
+        selectedIds.clear();
+        dispatchSelectionChanged();
+    }
+
+    public boolean isSelectionMode() {
+        return selectionMode;
+    }
+
+    /**
+     * Returns the ids of the selected recipes that are still in the list.
      *
-     * @param recipes  The recipes of the DB
+     * @return The ids, in the order of the list.
      */
-    public RecipeAdapter(List<Recipe> recipes) {
-        this.recipes = recipes;
+    @NonNull
+    public List<Integer> getSelectedIds() {
+        List<Integer> ids = new ArrayList<>(selectedIds.size());
+        for (RecipeListItem recipe : differ.getCurrentList()) {
+            if (selectedIds.get(recipe.getId())) {
+                ids.add(recipe.getId());
+            }
+        }
+        return ids;
+    }
+
+    private void dispatchSelectionChanged() {
+        if (selectionChangedListener != null) {
+            selectionChangedListener.onSelectionChanged(selectedIds.size());
+        }
     }
 
     /**
@@ -46,62 +241,157 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHold
     @NonNull
     @Override
     public RecipeAdapter.RecipeHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        long start = Metrics.begin(CREATE_VIEW_HOLDER);
+        try {
+            return inflateRow(parent);
+        } finally {
+            Metrics.end(CREATE_VIEW_HOLDER, start);
+        }
+    }
+
+    private RecipeHolder inflateRow(ViewGroup parent) {
         View recipeView = LayoutInflater.from(parent.getContext()).inflate(R.layout.recipe_item, parent, false);
-        return new RecipeHolder(recipeView);
+        RecipeHolder holder = new RecipeHolder(recipeView);
+
+        // The listeners are created once per ViewHolder (not on every bind) and look up
+        // the current position of the row when they are invoked.
+        recipeView.setOnClickListener(view -> {
+            int position = holder.getBindingAdapterPosition();
+            // A recipe that is still being inserted can't be opened nor selected yet
+            if (position == RecyclerView.NO_POSITION || getItem(position).isPending()) {
+                return;
+            }
+            if (selectionMode) {
+                toggleSelection(position);
+            } else if (recipeClickListener != null) {
+                // Invoke the callback method when the item view is clicked.
+                // Only the id is passed, the details are loaded on demand.
+                recipeClickListener.onRecipeClick(getItem(position).getId());
+            }
+        });
+
+        recipeView.setOnCreateContextMenuListener((menu, v, menuInfo) -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && !getItem(position).isPending()) {
+                contextMenuRecipeId = getItem(position).getId();
+                menu.add(0, 0, 0, "Modificar receta");
+                menu.add(0, 1, 1, "Eliminar receta");
+                menu.add(0, 2, 2, "Seleccionar");
+            }
+        });
+        return holder;
     }
 
     /**
      * Called by RecyclerView to display the data at the specified position.
+     * <p>
+     * This is the hot path of scrolling, so it doesn't allocate: the id label and the photo
+     * Uri are computed once per recipe, and the listeners once per ViewHolder. The only
+     * allocations left are the ones of the Glide request, when the row needs a new photo.
+     * Its duration and the load time of the photo are recorded in {@link Metrics}.
      *
      * @param holder   The ViewHolder which should be updated to represent the contents of the item at the given position
      * @param position The position of the item within the adapter's data set
      */
-    @SuppressLint("SetTextI18n")
     @Override
     public void onBindViewHolder(@NonNull RecipeAdapter.RecipeHolder holder, int position) {
+        long start = Metrics.begin(BIND_VIEW_HOLDER);
+        try {
+            bindRow(holder, position);
+        } finally {
+            Metrics.end(BIND_VIEW_HOLDER, start);
+        }
+    }
 
+    /**
+     * Binds only the selected state of the row when that is all that changed.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull RecipeHolder holder, int position, @NonNull List<Object> payloads) {
+        if (isSelectionOnly(payloads)) {
+            holder.itemView.setActivated(selectedIds.get(getItem(position).getId()));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private static boolean isSelectionOnly(List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != SELECTION_PAYLOAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void bindRow(RecipeHolder holder, int position) {
         // Retrieve the data for the current position
-        Recipe recipe = recipes.get(position);
-        int id = recipe.getId();
-        Log.i("RecipeAdapter.onBindViewHolder", "id: " + id);
-        String title = recipe.getTitle();
-        String resume = recipe.getResume();
-        String detail = recipe.getDetails();
-        String photoUriString = recipe.getPhoto();
-        Uri photoUri = Uri.parse(photoUriString);
+        RecipeListItem recipe = getItem(position);
 
         // Set the id, title and resume in the corresponding views
-        holder.itemView.setTag(position);
-        holder.recipeIdView.setText("id: " + id);
-        holder.recipeTitleView.setText(title);
-        holder.recipeResumeView.setText(resume);
+        holder.recipeIdView.setText(recipe.getIdLabel());
+        holder.recipeTitleView.setText(recipe.getTitle());
+        holder.recipeResumeView.setText(recipe.getResume());
+        holder.itemView.setActivated(selectedIds.get(recipe.getId()));
 
-        // Load the image using Glide, if available
+        // Load the image using Glide, if available. The list only loads the small thumbnail,
+        // if it has been generated. A row rebound with the same photo keeps its request.
+        Uri photoUri = recipe.getListPhotoUri();
         if (photoUri != null) {
-            Log.d("PopulateLists Glide", "photoUri: " + photoUri);
-            Glide.with(holder.itemView.getContext())
-                    .load(photoUri)
-                    .error(R.drawable.ic_add) // // Show a default image if the photoUri cannot be loaded
-                    .into(holder.recipePhotoView);
-        } else {
-            // If there is no image, show a default image
-            Glide.with(holder.itemView.getContext())
-                    .load(R.drawable.ic_add)
-                    .into(holder.recipePhotoView);
+            if (!photoUri.equals(holder.boundPhotoUri)) {
+                PHOTO_LOAD_METRICS.listen(photoRequest(photoUri)).into(holder.recipePhotoView);
+                holder.boundPhotoUri = photoUri;
+            }
+        } else if (holder.boundPhotoUri != null) {
+            // If there is no image, clearing the request shows the default image (the placeholder)
+            requestManager.clear(holder.recipePhotoView);
+            holder.boundPhotoUri = null;
         }
+    }
 
-        // Set the click listener for the item view
-        holder.itemView.setOnClickListener(view -> {
-            if (recipeClickListener != null) {
-                // Invoke the callback method when the item view is clicked
-                recipeClickListener.onRecipeClick(title, photoUri, detail);
-            }
-        });
+    /**
+     * Cancels the photo request of a row that has scrolled away and releases its bitmap.
+     *
+     * @param holder The ViewHolder being recycled.
+     */
+    @Override
+    public void onViewRecycled(@NonNull RecipeHolder holder) {
+        if (holder.boundPhotoUri != null) {
+            requestManager.clear(holder.recipePhotoView);
+            holder.boundPhotoUri = null;
+        }
+    }
 
-        holder.itemView.setOnCreateContextMenuListener((menu, v, menuInfo) -> {
-            menu.add(0, 0, position, "Modificar receta");
-            menu.add(0, 1, position, "Eliminar receta");
-        });
+    /**
+     * Builds the request used both to preload and to display the photo of a row,
+     * sized to the recipe_photo view.
+     */
+    private RequestBuilder<Drawable> photoRequest(Uri photoUri) {
+        return requestManager
+                .load(photoUri)
+                .override(photoSize)
+                .fitCenter()
+                .placeholder(R.drawable.ic_add)
+                .error(R.drawable.ic_add); // Show a default image if the photoUri cannot be loaded
+    }
+
+    @NonNull
+    @Override
+    public List<RecipeListItem> getPreloadItems(int position) {
+        List<RecipeListItem> recipes = differ.getCurrentList();
+        if (position < 0 || position >= recipes.size() || recipes.get(position).getListPhoto() == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(recipes.get(position));
+    }
+
+    @Nullable
+    @Override
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull RecipeListItem recipe) {
+        return photoRequest(recipe.getListPhotoUri());
     }
 
     /**
@@ -111,7 +401,18 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHold
      */
     @Override
     public int getItemCount() {
-        return recipes.size();
+        return differ.getCurrentList().size();
+    }
+
+    /**
+     * Returns the stable id of the row, which is the id of the recipe.
+     *
+     * @param position The adapter position.
+     * @return The id of the recipe at that position.
+     */
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     /**
@@ -122,11 +423,9 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHold
         /**
          * Called when a recipe item is clicked.
          *
-         * @param title   The title of the clicked recipe.
-         * @param photo   The Uri of the photo associated with the clicked recipe, or null if no photo is available.
-         * @param content The content/details of the clicked recipe.
+         * @param recipeId The id of the clicked recipe.
          */
-        void onRecipeClick(String title, Uri photo, String content);
+        void onRecipeClick(int recipeId);
     }
 
     /**
@@ -138,6 +437,23 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHold
         this.recipeClickListener = listener;
     }
 
+    /**
+     * Interface definition for a callback to be invoked when recipes are selected or deselected.
+     */
+    public interface OnSelectionChangedListener {
+
+        /**
+         * Called when the selection changes, and when selection mode ends.
+         *
+         * @param selectedCount The number of selected recipes.
+         */
+        void onSelectionChanged(int selectedCount);
+    }
+
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        this.selectionChangedListener = listener;
+    }
+
     /**
      * ViewHolder for holding the views of a recipe item in the RecyclerView.
      */
@@ -156,6 +472,9 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeHold
         public final TextView recipeDetailContentView;
         public final ImageView recipeDetailPhotoView;
 
+        // Photo requested for this row, null when it shows the default image
+        Uri boundPhotoUri;
+
         /**
          * Constructor for the RecipeHolder.
          *
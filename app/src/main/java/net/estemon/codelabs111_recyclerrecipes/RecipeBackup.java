@@ -0,0 +1,155 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports the recipes catalog to a directory and imports it back.
+ * <p>
+ * The directory contains a {@value #RECIPES_FILE} file, written and read one recipe at a time
+ * with {@link RecipeJsonWriter} and {@link RecipeJsonReader}, and a {@value #PHOTOS_DIR}
+ * directory with a copy of the photos. Imported photos are added to the {@link PhotoStore}, so
+ * importing the same backup twice doesn't copy its photos again.
+ * <p>
+ * Both operations do I/O and are meant to be run as {@link IoScheduler#job(Runnable) jobs}, so
+ * they don't hold a reader or the writer for their whole run. The import must not run on the
+ * writer thread: it reads the backup, and copies its photos, on the calling thread and writes
+ * every chunk of recipes in its own task on the writer thread (see {@link RecipeImporter}).
+ */
+public class RecipeBackup {
+
+    private static final String TAG = "RecipeBackup";
+
+    static final String RECIPES_FILE = "recipes.json";
+    static final String PHOTOS_DIR = "photos";
+
+    private final Context context;
+    private final AppDatabase database;
+    @Nullable
+    private final PhotoStore photoStore;
+
+    public RecipeBackup(Context context, AppDatabase database) {
+        this(context, database, PhotoStore.create(context));
+    }
+
+    /**
+     * @param photoStore Store of the imported photos, or null to import the recipes without them.
+     */
+    RecipeBackup(Context context, AppDatabase database, @Nullable PhotoStore photoStore) {
+        this.context = context.getApplicationContext();
+        this.database = database;
+        this.photoStore = photoStore;
+    }
+
+    /**
+     * Directory used by default for the exports, inside the app external files.
+     */
+    public static File getDefaultDirectory(Context context) {
+        return new File(context.getExternalFilesDir(null), "backup");
+    }
+
+    /**
+     * Exports all the recipes and their photos to the given directory.
+     *
+     * @param directory The destination directory. It is created if needed.
+     * @return The number of exported recipes.
+     */
+    public int exportTo(File directory) throws IOException {
+        File photosDir = new File(directory, PHOTOS_DIR);
+        if (!photosDir.isDirectory() && !photosDir.mkdirs()) {
+            throw new IOException("Can't create " + photosDir);
+        }
+        File recipesFile = new File(directory, RECIPES_FILE);
+        try (Cursor cursor = database.recipeDao().getRecipesCursor();
+             RecipeJsonWriter writer = new RecipeJsonWriter(new BufferedWriter(
+                     new OutputStreamWriter(new FileOutputStream(recipesFile), StandardCharsets.UTF_8)))) {
+            int count = writer.write(cursor, photo -> exportPhoto(photo, photosDir));
+            Log.i(TAG, "Exported " + count + " recipes to " + recipesFile);
+            return count;
+        }
+    }
+
+    /**
+     * Imports the recipes and photos of a directory written by {@link #exportTo(File)}.
+     * The imported recipes are added to the ones already in the database.
+     *
+     * @param directory The directory with the exported recipes.
+     * @param listener  Optional listener to follow the progress, can be null.
+     * @return The number of imported recipes.
+     */
+    public int importFrom(File directory, @Nullable RecipeImporter.ProgressListener listener) throws IOException {
+        File photosDir = new File(directory, PHOTOS_DIR);
+        try (RecipeJsonReader reader = new RecipeJsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(new File(directory, RECIPES_FILE)), StandardCharsets.UTF_8)),
+                photoFile -> importPhoto(new File(photosDir, photoFile)))) {
+            return new RecipeImporter(database, IoScheduler.get().writes(), photoStore).importRecipes(reader, listener);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Nullable
+    private String exportPhoto(String photo, File photosDir) {
+        Uri uri = Uri.parse(photo);
+        String name = uri.getLastPathSegment();
+        if (name == null) {
+            return null;
+        }
+        File target = new File(photosDir, name);
+        if (target.exists()) {
+            return name; // Shared by several recipes, already copied
+        }
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) {
+                return null;
+            }
+            try (OutputStream out = new FileOutputStream(target)) {
+                copy(in, out);
+            }
+            return name;
+        } catch (IOException | SecurityException | IllegalArgumentException e) {
+            Log.w(TAG, "Can't export photo " + photo + ": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            target.delete();
+            return null;
+        }
+    }
+
+    @Nullable
+    private String importPhoto(File source) {
+        if (photoStore == null || !source.isFile()) {
+            return null;
+        }
+        try {
+            return photoStore.add(source).uri;
+        } catch (IOException e) {
+            Log.w(TAG, "Can't import photo " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of complete recipes indexed by id, shared by the whole process through
+ * {@link RecipeRepository}.
+ * <p>
+ * The cache is bounded by the approximate memory used by the recipes, not by their number:
+ * {@code details} and the photo paths are by far the biggest fields, so the recipes with long
+ * details take more room and the least recently used ones are evicted first.
+ * Recipes are immutable, so the cached instances are handed out as they are.
+ * It is thread safe.
+ */
+public class RecipeCache {
+
+    // Enough for a few thousand typical recipes
+    public static final int DEFAULT_MAX_SIZE_BYTES = 2 * 1024 * 1024;
+
+    // Object headers and the int and references of a Recipe, roughly
+    private static final int RECIPE_OVERHEAD_BYTES = 64;
+
+    private final LruCache<Integer, Recipe> recipes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Snapshot of the counters of the cache.
+     */
+    public static final class Stats {
+
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final int sizeBytes;
+        public final int maxSizeBytes;
+
+        Stats(long hits, long misses, long evictions, int sizeBytes, int maxSizeBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.sizeBytes = sizeBytes;
+            this.maxSizeBytes = maxSizeBytes;
+        }
+
+        /**
+         * Fraction of the lookups served by the cache, between 0 and 1.
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " evictions=" + evictions
+                    + " size=" + sizeBytes / 1024 + "/" + maxSizeBytes / 1024 + "KB";
+        }
+    }
+
+    public RecipeCache(int maxSizeBytes) {
+        recipes = new LruCache<Integer, Recipe>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Integer id, Recipe recipe) {
+                return sizeOfRecipe(recipe);
+            }
+        };
+    }
+
+    /**
+     * Returns the cached recipe, counting the lookup as a hit or a miss.
+     *
+     * @return The recipe, or null if it isn't cached.
+     */
+    @Nullable
+    public Recipe get(int id) {
+        Recipe recipe = recipes.get(id);
+        if (recipe == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return recipe;
+    }
+
+    /**
+     * Caches the recipe, replacing the previous version with the same id.
+     */
+    public void put(Recipe recipe) {
+        recipes.put(recipe.getId(), recipe);
+    }
+
+    public void remove(int id) {
+        recipes.remove(id);
+    }
+
+    /**
+     * Drops every recipe, for writes that didn't go through the cache (an import, for example).
+     */
+    public void clear() {
+        recipes.evictAll();
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), recipes.evictionCount(), recipes.size(), recipes.maxSize());
+    }
+
+    /**
+     * Approximate heap used by a recipe: two bytes per character of its strings.
+     */
+    static int sizeOfRecipe(Recipe recipe) {
+        return RECIPE_OVERHEAD_BYTES + 2 * (length(recipe.getTitle()) + length(recipe.getResume())
+                + length(recipe.getDetails()) + length(recipe.getPhoto())
+                + length(recipe.getThumbnail()) + length(recipe.getDetailPhoto()));
+    }
+
+    private static int length(@Nullable String value) {
+        return value != null ? value.length() : 0;
+    }
+}
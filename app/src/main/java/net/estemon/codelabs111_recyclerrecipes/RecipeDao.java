@@ -1,24 +1,282 @@
 package net.estemon.codelabs111_recyclerrecipes;
 
+import android.database.Cursor;
+
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
+import androidx.room.Update;
+import androidx.room.Upsert;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Dao
 public interface RecipeDao {
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertRecipe(Recipe recipe);
 
-    @Query("SELECT * FROM recipes")
-    List<Recipe> getAllRecipes();
+    /**
+     * Maximum number of ids bound to a single {@code IN (...)} statement,
+     * below the 999 variables SQLite allows in older Android versions.
+     */
+    int MAX_BIND_ARGS = 500;
+
+    /**
+     * Inserts a new recipe. Existing recipes are changed with {@link #updateRecipe}: a REPLACE
+     * would delete the old row without the triggers that remove it from {@link RecipeFts}
+     * (recursive triggers are off), leaving its old words in the search index.
+     *
+     * @return The row id of the recipe, which is its id.
+     */
+    @Insert
+    long insertRecipe(Recipe recipe);
+
+    /**
+     * Inserts all the new recipes in a single transaction, reusing the same compiled statement.
+     *
+     * @return The row ids of the inserted recipes, in the same order.
+     */
+    @Insert
+    long[] insertRecipes(List<Recipe> recipes);
+
+    /**
+     * Updates an existing recipe in place, which keeps {@link RecipeFts} in sync through the
+     * update triggers of Room.
+     *
+     * @return The number of updated rows: 0 if there is no recipe with its id.
+     */
+    @Update
+    int updateRecipe(Recipe recipe);
+
+    /**
+     * Inserts the new recipes and updates the existing ones (same id) in a single transaction.
+     * Unlike REPLACE, existing rows are updated in place instead of deleted and inserted again.
+     *
+     * @return The row ids of the inserted recipes, in the same order, and -1 for the updated ones.
+     */
+    @Upsert
+    long[] upsertRecipes(List<Recipe> recipes);
+
+    /**
+     * Inserts the recipe, or updates it if it already exists, together with its ingredients and
+     * steps, parsed from its details, in a single transaction.
+     *
+     * @return The id of the recipe.
+     */
+    @Transaction
+    default long saveRecipeWithContent(Recipe recipe) {
+        // A recipe deleted meanwhile is inserted again with its id
+        long id = recipe.getId() != 0 && updateRecipe(recipe) > 0 ? recipe.getId() : insertRecipe(recipe);
+        replaceContent((int) id, recipe.getDetails());
+        return id;
+    }
+
+    /**
+     * Replaces the ingredients and steps of a recipe with the ones parsed from its details.
+     * Must be called inside a transaction.
+     */
+    default void replaceContent(int recipeId, String details) {
+        deleteIngredients(recipeId);
+        deleteSteps(recipeId);
+        RecipeDetailsParser.Content content = RecipeDetailsParser.parse(details);
+        insertIngredients(content.toIngredients(recipeId));
+        insertSteps(content.toSteps(recipeId));
+    }
+
+    /**
+     * Inserts again, with their ids, recipes deleted by {@link #deleteRecipesReturning}, and their
+     * ingredients and steps, in a single transaction and with one batched insert per table.
+     */
+    @Transaction
+    default void restoreRecipes(List<Recipe> recipes) {
+        insertRecipes(recipes);
+        List<Ingredient> ingredients = new ArrayList<>();
+        List<Step> steps = new ArrayList<>();
+        for (Recipe recipe : recipes) {
+            RecipeDetailsParser.Content content = RecipeDetailsParser.parse(recipe.getDetails());
+            ingredients.addAll(content.toIngredients(recipe.getId()));
+            steps.addAll(content.toSteps(recipe.getId()));
+        }
+        insertIngredients(ingredients);
+        insertSteps(steps);
+    }
+
+    @Insert
+    void insertIngredients(List<Ingredient> ingredients);
+
+    @Insert
+    void insertSteps(List<Step> steps);
+
+    @Query("DELETE FROM ingredients WHERE recipeId = :recipeId")
+    void deleteIngredients(int recipeId);
+
+    @Query("DELETE FROM steps WHERE recipeId = :recipeId")
+    void deleteSteps(int recipeId);
+
+    /**
+     * Keyset page: the next {@code limit} recipes whose id is greater than {@code afterId}.
+     * Walks the primary key index, so the cost does not depend on how deep the page is.
+     * Only the list columns are read, {@code details} is loaded with {@link #getRecipeById}.
+     */
+    @Query("SELECT id, title, resume, photo, thumbnail, modifiedAt FROM recipes WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<RecipeListItem> getRecipeListItemsAfter(int afterId, int limit);
+
+    /**
+     * Page of the list with the sort mode and filters of a {@link RecipeListQuery}.
+     */
+    @RawQuery(observedEntities = Recipe.class)
+    List<RecipeListItem> getRecipeListItems(SupportSQLiteQuery query);
+
+    @Query("SELECT * FROM recipes WHERE id = :id")
+    Recipe getRecipeById(int id);
+
+    /**
+     * The recipe with its ingredients and steps, or null if it doesn't exist.
+     */
+    @Transaction
+    @Query("SELECT * FROM recipes WHERE id = :id")
+    RecipeWithContent getRecipeWithContent(int id);
+
+    @Query("SELECT * FROM ingredients WHERE recipeId = :recipeId ORDER BY position")
+    List<Ingredient> getIngredients(int recipeId);
+
+    @Query("SELECT * FROM steps WHERE recipeId = :recipeId ORDER BY position")
+    List<Step> getSteps(int recipeId);
+
+    /**
+     * The ingredients of several recipes, for example to build a shopping list, ordered by recipe
+     * and position. At most {@link #MAX_BIND_ARGS} ids.
+     */
+    @Query("SELECT * FROM ingredients WHERE recipeId IN (:recipeIds) ORDER BY recipeId, position")
+    List<Ingredient> getIngredientsOfRecipes(List<Integer> recipeIds);
+
+    /**
+     * First {@code limit} recipes (by id) with an ingredient whose name is in {@code [from, to)}.
+     * The range is a search of the (name, recipeId) index, which also gives the recipe ids.
+     */
+    @Query("SELECT id, title, resume, photo, thumbnail, modifiedAt FROM recipes "
+            + "WHERE id IN (SELECT recipeId FROM ingredients WHERE name >= :from AND name < :to) "
+            + "ORDER BY id LIMIT :limit")
+    List<RecipeListItem> getRecipeListItemsWithIngredientRange(String from, String to, int limit);
+
+    /**
+     * First {@code limit} recipes (by id) using an ingredient whose name starts with the given
+     * text, compared with the {@link RecipeDetailsParser#normalize normalized} names: "limon"
+     * finds "Limón" and "harina" finds "harina de trigo".
+     */
+    default List<RecipeListItem> getRecipeListItemsWithIngredient(String ingredient, int limit) {
+        String name = RecipeDetailsParser.normalize(ingredient);
+        return getRecipeListItemsWithIngredientRange(name, name + Character.MAX_VALUE, limit);
+    }
+
+    /**
+     * Full-text search over title, resume and details through the {@link RecipeFts} index.
+     * Recipes whose title matches are ranked first, then the newest ones.
+     *
+     * @param query      MATCH query built with {@link RecipeSearchQuery#toMatchQuery(String)}.
+     * @param titleQuery The same query restricted to the title, see {@link RecipeSearchQuery#toTitleQuery(String)}.
+     * @param limit      Size of the page.
+     * @param offset     Number of results to skip.
+     */
+    @Query("SELECT recipes.id, recipes.title, recipes.resume, recipes.photo, recipes.thumbnail, recipes.modifiedAt FROM recipes "
+            + "JOIN recipes_fts ON recipes.id = recipes_fts.docid "
+            + "WHERE recipes_fts MATCH :query "
+            + "ORDER BY recipes.id IN (SELECT docid FROM recipes_fts WHERE recipes_fts MATCH :titleQuery) DESC, "
+            + "recipes.id DESC "
+            + "LIMIT :limit OFFSET :offset")
+    List<RecipeListItem> searchRecipes(String query, String titleQuery, int limit, int offset);
+
+    /**
+     * Cursor over every recipe, ordered by id, to stream the whole table (for example to export it)
+     * without building a list. The caller must close it.
+     */
+    @Query("SELECT * FROM recipes ORDER BY id")
+    Cursor getRecipesCursor();
+
+    /**
+     * Cursor over the photo columns of every recipe, to find out which photo files are still
+     * in use without loading the recipes. The caller must close it.
+     */
+    @Query("SELECT photo, thumbnail, detailPhoto FROM recipes")
+    Cursor getPhotoReferencesCursor();
+
+    /**
+     * Number of recipes with the given photo, or one of its copies as thumbnail or detail photo,
+     * counted on the indices of the three photo columns. It is the reference count of the photos
+     * of {@link PhotoStore}.
+     *
+     * @param photo  The URI of the photo.
+     * @param copies The URIs of its copies made by {@link ThumbnailGenerator}.
+     */
+    @Query("SELECT COUNT(*) FROM recipes WHERE photo = :photo OR thumbnail IN (:copies) OR detailPhoto IN (:copies)")
+    int countPhotoReferences(String photo, List<String> copies);
 
     @Query("SELECT COUNT(*) FROM recipes")
     int getRecipeCount();
 
     @Delete
     void deleteRecipe(Recipe recipe);
+
+    @Query("DELETE FROM recipes WHERE id = :id")
+    int deleteRecipeById(int id);
+
+    @Query("DELETE FROM recipes WHERE id IN (:ids)")
+    int deleteRecipesByIdsChunk(List<Integer> ids);
+
+    @Query("SELECT * FROM recipes WHERE id IN (:ids)")
+    List<Recipe> getRecipesByIdsChunk(List<Integer> ids);
+
+    /**
+     * Deletes all the recipes with the given ids in a single transaction, one read and one delete
+     * per chunk of {@link #MAX_BIND_ARGS} ids, and returns them as they were, to undo it with
+     * {@link #restoreRecipes}. Their ingredients and steps are deleted with them.
+     *
+     * @return The deleted recipes; the ids that didn't exist are ignored.
+     */
+    @Transaction
+    default List<Recipe> deleteRecipesReturning(Collection<Integer> ids) {
+        List<Recipe> deleted = new ArrayList<>(ids.size());
+        List<Integer> chunk = new ArrayList<>(Math.min(ids.size(), MAX_BIND_ARGS));
+        for (Integer id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_BIND_ARGS) {
+                deleted.addAll(getRecipesByIdsChunk(chunk));
+                deleteRecipesByIdsChunk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            deleted.addAll(getRecipesByIdsChunk(chunk));
+            deleteRecipesByIdsChunk(chunk);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes all the recipes with the given ids in a single transaction.
+     * The ids are bound in chunks of {@link #MAX_BIND_ARGS}.
+     *
+     * @return The number of deleted recipes.
+     */
+    @Transaction
+    default int deleteRecipesByIds(Collection<Integer> ids) {
+        int deleted = 0;
+        List<Integer> chunk = new ArrayList<>(Math.min(ids.size(), MAX_BIND_ARGS));
+        for (Integer id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_BIND_ARGS) {
+                deleted += deleteRecipesByIdsChunk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            deleted += deleteRecipesByIdsChunk(chunk);
+        }
+        return deleted;
+    }
 }
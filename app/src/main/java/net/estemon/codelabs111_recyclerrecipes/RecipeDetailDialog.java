@@ -0,0 +1,114 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.net.Uri;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AlertDialog;
+
+import com.bumptech.glide.RequestManager;
+
+/**
+ * Detail dialog of a recipe, opened with just its id.
+ * <p>
+ * The dialog and its views are created the first time and reused every time it is opened again.
+ * It is shown right away and filled in when the complete recipe has been loaded by
+ * {@link RecipeViewModel#loadRecipe}: immediately for the recently opened recipes, which are
+ * served by the {@link RecipeCache}, or after a read on a background thread. The photo is the
+ * detail sized copy, loaded by Glide at the size of its view.
+ */
+public class RecipeDetailDialog {
+
+    // Load times of the detail photos, by where Glide found them
+    private static final PhotoLoadMetrics PHOTO_LOAD_METRICS = new PhotoLoadMetrics("Glide.detail");
+
+    private final Activity activity;
+    private final RecipeViewModel viewModel;
+    private final RequestManager requestManager;
+    private final int photoSize;
+
+    // Created on the first open
+    private AlertDialog dialog;
+    private TextView titleView;
+    private ImageView photoView;
+    private TextView contentView;
+
+    // Recipe shown, to ignore the loads of a recipe opened before
+    private int shownRecipeId;
+
+    public RecipeDetailDialog(Activity activity, RecipeViewModel viewModel, RequestManager requestManager) {
+        this.activity = activity;
+        this.viewModel = viewModel;
+        this.requestManager = requestManager;
+        this.photoSize = activity.getResources().getDimensionPixelSize(R.dimen.recipe_detail_photo_size);
+    }
+
+    /**
+     * Opens the dialog and loads the recipe into it.
+     *
+     * @param recipeId Id of the recipe to show.
+     */
+    public void show(int recipeId) {
+        if (dialog == null) {
+            create();
+        }
+        shownRecipeId = recipeId;
+        titleView.setText(null);
+        contentView.setText(R.string.loading_recipe);
+        requestManager.clear(photoView);
+        dialog.show();
+        viewModel.loadRecipe(recipeId, recipe -> {
+            if (recipeId != shownRecipeId || !dialog.isShowing()) {
+                return;
+            }
+            if (recipe == null) {
+                // Deleted in the meantime
+                dialog.dismiss();
+                return;
+            }
+            bind(recipe);
+        });
+    }
+
+    /**
+     * Closes the dialog, if it is open. To be called when the activity is destroyed.
+     */
+    public void dismiss() {
+        if (dialog != null) {
+            dialog.dismiss();
+        }
+    }
+
+    @SuppressLint("InflateParams")
+    private void create() {
+        View dialogView = activity.getLayoutInflater().inflate(R.layout.recipe_detail_dialog, null);
+        titleView = dialogView.findViewById(R.id.recipe_detail_title);
+        photoView = dialogView.findViewById(R.id.recipe_detail_photo);
+        contentView = dialogView.findViewById(R.id.recipe_detail_content);
+        dialog = new AlertDialog.Builder(activity)
+                .setView(dialogView)
+                .create();
+        // Releases the photo while the dialog is hidden
+        dialog.setOnDismissListener(d -> requestManager.clear(photoView));
+        dialogView.findViewById(R.id.btn_close).setOnClickListener(view -> dialog.dismiss());
+    }
+
+    private void bind(Recipe recipe) {
+        titleView.setText(recipe.getTitle());
+        contentView.setText(recipe.getDetails());
+        String photo = recipe.getDetailPhoto() != null ? recipe.getDetailPhoto() : recipe.getPhoto();
+        if (photo != null) {
+            PHOTO_LOAD_METRICS.listen(requestManager.load(Uri.parse(photo))
+                            .override(photoSize)
+                            .fitCenter()
+                            .error(R.drawable.ic_add))
+                    .into(photoView);
+        } else {
+            // Si no hay imagen, muestra una imagen predeterminada
+            requestManager.load(R.drawable.ic_add).into(photoView);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the free text {@code details} of a recipe into its ingredients and its steps, which are
+ * stored in the {@link Ingredient} and {@link Step} tables.
+ * <p>
+ * The text is expected to look like the one written by the app:
+ * <pre>
+ * Ingredientes:
+ * - 500g de harina
+ * - 2 huevos
+ *
+ * Instrucciones:
+ * 1. Mezcla los ingredientes.
+ * 2. Hornea durante 30 minutos.
+ * </pre>
+ * Headers are recognized in Spanish and English, with or without accents. Lines before the first
+ * header are ignored, unless there is no header at all: then the whole text is a single step,
+ * so nothing written by the user is lost.
+ */
+public final class RecipeDetailsParser {
+
+    private static final Pattern LIST_MARKER = Pattern.compile("^(?:[-*•·]\\s*|\\d+[.)]\\s+)");
+
+    // Quantity and unit in front of the name of an ingredient: "500g de", "2 cucharadas de", "1/2 "
+    private static final Pattern QUANTITY = Pattern.compile("^[\\d.,/½¼¾]+\\s*"
+            + "(?:(?:kg|g|gr|mg|l|dl|cl|ml|tazas?|vasos?|cucharadas?|cucharaditas?|cdas?|cdtas?|pizcas?"
+            + "|dientes?|latas?|sobres?|ramas?|hojas?|unidad(?:es)?)\\b\\.?\\s*)?(?:de\\s+)?");
+
+    private static final Pattern PARENTHESES = Pattern.compile("\\s*\\([^)]*\\)");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final String TO_TASTE = " al gusto";
+
+    private enum Section {NONE, INGREDIENTS, STEPS}
+
+    /**
+     * Ingredients and steps of a recipe, in the order of the text.
+     */
+    public static final class Content {
+
+        public final List<String> ingredients;
+        public final List<String> steps;
+
+        Content(List<String> ingredients, List<String> steps) {
+            this.ingredients = Collections.unmodifiableList(ingredients);
+            this.steps = Collections.unmodifiableList(steps);
+        }
+
+        /**
+         * The ingredients as rows of the given recipe, with their lookup names.
+         */
+        public List<Ingredient> toIngredients(int recipeId) {
+            List<Ingredient> rows = new ArrayList<>(ingredients.size());
+            for (int i = 0; i < ingredients.size(); i++) {
+                String text = ingredients.get(i);
+                rows.add(new Ingredient(recipeId, i, text, ingredientName(text)));
+            }
+            return rows;
+        }
+
+        /**
+         * The steps as rows of the given recipe.
+         */
+        public List<Step> toSteps(int recipeId) {
+            List<Step> rows = new ArrayList<>(steps.size());
+            for (int i = 0; i < steps.size(); i++) {
+                rows.add(new Step(recipeId, i, steps.get(i)));
+            }
+            return rows;
+        }
+    }
+
+    private RecipeDetailsParser() {
+    }
+
+    /**
+     * Parses the details of a recipe.
+     *
+     * @param details The details, can be null.
+     * @return The ingredients (as written) and the steps, without their list markers.
+     */
+    @NonNull
+    public static Content parse(@Nullable String details) {
+        List<String> ingredients = new ArrayList<>();
+        List<String> steps = new ArrayList<>();
+        if (details == null || details.trim().isEmpty()) {
+            return new Content(ingredients, steps);
+        }
+
+        Section section = Section.NONE;
+        boolean headerFound = false;
+        StringBuilder step = null;
+        for (String rawLine : details.split("\\r?\\n")) {
+            String line = rawLine.trim();
+            Section header = header(line);
+            if (header != null) {
+                headerFound = true;
+                section = header;
+                step = flush(step, steps);
+                continue;
+            }
+            if (line.isEmpty()) {
+                step = flush(step, steps);
+                continue;
+            }
+            Matcher marker = LIST_MARKER.matcher(line);
+            boolean marked = marker.find();
+            String text = marked ? line.substring(marker.end()) : line;
+            if (text.isEmpty()) {
+                continue;
+            }
+            if (section == Section.INGREDIENTS) {
+                ingredients.add(text);
+            } else if (section == Section.STEPS) {
+                if (marked || step == null) {
+                    // A numbered line starts a step, the unnumbered ones continue it
+                    flush(step, steps);
+                    step = new StringBuilder(text);
+                } else {
+                    step.append(' ').append(text);
+                }
+            }
+        }
+        flush(step, steps);
+
+        if (!headerFound) {
+            steps.add(details.trim());
+        }
+        return new Content(ingredients, steps);
+    }
+
+    /**
+     * Lookup key of an ingredient: its name without quantity, unit, notes between parentheses or
+     * after a comma, normalized with {@link #normalize}. For example "500g de harina (de trigo)"
+     * is "harina" and "2 Huevos, batidos" is "huevos".
+     */
+    @NonNull
+    public static String ingredientName(@NonNull String ingredient) {
+        String name = normalize(PARENTHESES.matcher(ingredient).replaceAll(""));
+        // "1,5 kg" is a quantity, "huevos, batidos" a note
+        int comma = name.indexOf(", ");
+        if (comma >= 0) {
+            name = name.substring(0, comma).trim();
+        }
+        name = QUANTITY.matcher(name).replaceFirst("");
+        if (name.endsWith(TO_TASTE)) {
+            name = name.substring(0, name.length() - TO_TASTE.length());
+        }
+        name = name.trim();
+        // An ingredient that is only a quantity keeps its text, so it can still be found
+        return name.isEmpty() ? normalize(ingredient) : name;
+    }
+
+    /**
+     * Lower case, without accents and with single spaces, so "Limón" and "limon " are the same key.
+     */
+    @NonNull
+    public static String normalize(@NonNull String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String plain = MARKS.matcher(decomposed).replaceAll("");
+        return SPACES.matcher(plain.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    @Nullable
+    private static Section header(String line) {
+        if (!line.endsWith(":")) {
+            return null;
+        }
+        switch (normalize(line.substring(0, line.length() - 1))) {
+            case "ingredientes":
+            case "ingredients":
+                return Section.INGREDIENTS;
+            case "instrucciones":
+            case "preparacion":
+            case "elaboracion":
+            case "pasos":
+            case "instructions":
+            case "steps":
+                return Section.STEPS;
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private static StringBuilder flush(@Nullable StringBuilder step, List<String> steps) {
+        if (step != null) {
+            steps.add(step.toString());
+        }
+        return null;
+    }
+}
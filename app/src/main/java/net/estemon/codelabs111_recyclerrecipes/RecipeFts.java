@@ -0,0 +1,49 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * Full-text index over the text columns of {@link Recipe}.
+ * <p>
+ * It is an external content FTS4 table: the text is not stored twice, only the index.
+ * Room creates triggers on the {@code recipes} table that keep it in sync on every insert,
+ * update and delete; the docid of each row is the id of its recipe.
+ * <p>
+ * The {@code unicode61} tokenizer folds the case and removes the diacritics of every letter,
+ * in the index and in the queries, so "LIMÓN" and "limon" both find "Limón".
+ */
+@Fts4(contentEntity = Recipe.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61,
+        tokenizerArgs = "remove_diacritics=1")
+@Entity(tableName = "recipes_fts")
+public class RecipeFts {
+
+    private String title;
+    private String resume;
+    private String details;
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getResume() {
+        return resume;
+    }
+
+    public void setResume(String resume) {
+        this.resume = resume;
+    }
+
+    public String getDetails() {
+        return details;
+    }
+
+    public void setDetails(String details) {
+        this.details = details;
+    }
+}
@@ -0,0 +1,160 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Bulk import of recipes into the database.
+ * <p>
+ * The recipes are read from an {@link Iterator}, so the source can stream them (for example
+ * from a file) and only {@link #CHUNK_SIZE} recipes are kept in memory at a time. Each chunk is
+ * read first, on the calling thread, with any I/O the source does (the photos of a backup, for
+ * example), and then written in its own transaction with {@link RecipeDao#upsertRecipes(List)},
+ * followed by the ingredients and steps of its recipes. The write lock is only held for a chunk
+ * at a time, and the WAL can be checkpointed between chunks.
+ * <p>
+ * The transactions run on the given writer executor, usually {@link IoScheduler#writes()}, one
+ * task per chunk, so other writes run between them; the import must then be called from another
+ * thread, which waits for each chunk before reading the next one.
+ * <p>
+ * The photos of the recipes replaced by the import are released with
+ * {@link PhotoStore#releaseIfUnused} once their chunk has been committed, in the same writer task.
+ */
+public class RecipeImporter {
+
+    private static final String TAG = "RecipeImporter";
+
+    public static final int CHUNK_SIZE = 500;
+
+    private final AppDatabase database;
+    private final Executor writer;
+    @Nullable
+    private final PhotoStore photoStore;
+
+    /**
+     * Listener to follow the progress of an import.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after every chunk has been written.
+         *
+         * @param imported Number of recipes imported so far.
+         */
+        void onProgress(int imported);
+    }
+
+    /**
+     * Importer that writes the chunks on the calling thread.
+     */
+    public RecipeImporter(AppDatabase database) {
+        this(database, Runnable::run, null);
+    }
+
+    /**
+     * @param database   The database.
+     * @param writer     Runs the transaction of every chunk.
+     * @param photoStore Store of the photos released by the replaced recipes, can be null.
+     */
+    public RecipeImporter(AppDatabase database, Executor writer, @Nullable PhotoStore photoStore) {
+        this.database = database;
+        this.writer = writer;
+        this.photoStore = photoStore;
+    }
+
+    /**
+     * Imports all the recipes returned by the iterator. Recipes with id 0 get a new id,
+     * the others replace the recipe with the same id, if there is one.
+     *
+     * @param recipes  The recipes to import.
+     * @param listener Optional listener to follow the progress, can be null.
+     * @return The number of imported recipes.
+     */
+    public int importRecipes(Iterator<Recipe> recipes, ProgressListener listener) {
+        int imported = 0;
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        List<Recipe> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (recipes.hasNext()) {
+            Recipe recipe = recipes.next();
+            // Every recipe needs a modification date to be placed in the modification order
+            if (recipe.getModifiedAt() == 0) {
+                recipe = recipe.toBuilder().setModifiedAt(now).build();
+            }
+            chunk.add(recipe);
+            if (chunk.size() == CHUNK_SIZE || !recipes.hasNext()) {
+                writeChunk(chunk);
+                imported += chunk.size();
+                chunk.clear();
+                if (listener != null) {
+                    listener.onProgress(imported);
+                }
+            }
+        }
+        Log.i(TAG, "Imported " + imported + " recipes in "
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return imported;
+    }
+
+    /**
+     * Writes the chunk in a transaction on the writer executor, releases the photos it replaced
+     * once committed, and waits for it.
+     */
+    private void writeChunk(List<Recipe> chunk) {
+        RecipeDao recipeDao = database.recipeDao();
+        try {
+            CompletableFuture.runAsync(() -> {
+                List<String> replacedPhotos = new ArrayList<>();
+                database.runInTransaction(() -> {
+                    if (photoStore != null) {
+                        replacedPhotos.addAll(photosReplacedBy(recipeDao, chunk));
+                    }
+                    long[] ids = recipeDao.upsertRecipes(chunk);
+                    for (int i = 0; i < ids.length; i++) {
+                        // The updated recipes keep their id
+                        int id = ids[i] != -1 ? (int) ids[i] : chunk.get(i).getId();
+                        recipeDao.replaceContent(id, chunk.get(i).getDetails());
+                    }
+                });
+                for (String photo : replacedPhotos) {
+                    photoStore.releaseIfUnused(recipeDao, photo);
+                }
+            }, writer).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Photos of the recipes that the chunk replaces, when the new version has another one.
+     * The chunk is not larger than {@link RecipeDao#MAX_BIND_ARGS}.
+     */
+    private static List<String> photosReplacedBy(RecipeDao recipeDao, List<Recipe> chunk) {
+        Map<Integer, String> newPhotos = new HashMap<>();
+        for (Recipe recipe : chunk) {
+            if (recipe.getId() != 0) {
+                newPhotos.put(recipe.getId(), recipe.getPhoto());
+            }
+        }
+        List<String> replaced = new ArrayList<>();
+        if (newPhotos.isEmpty()) {
+            return replaced;
+        }
+        for (Recipe old : recipeDao.getRecipesByIdsChunk(new ArrayList<>(newPhotos.keySet()))) {
+            if (old.getPhoto() != null && !old.getPhoto().equals(newPhotos.get(old.getId()))) {
+                replaced.add(old.getPhoto());
+            }
+        }
+        return replaced;
+    }
+}
@@ -0,0 +1,130 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the recipes written by {@link RecipeJsonWriter} one at a time.
+ * <p>
+ * It is an {@link Iterator}, so it can be handed to {@link RecipeImporter} and the recipes are
+ * parsed only as they are imported. The returned recipes have id 0, so they are added to the
+ * recipes already in the database instead of replacing them.
+ * I/O errors while iterating are thrown as {@link UncheckedIOException}.
+ */
+public class RecipeJsonReader implements Iterator<Recipe>, Closeable {
+
+    /**
+     * Copies the photo of an imported recipe into the app.
+     */
+    public interface PhotoImporter {
+
+        /**
+         * @param photoFile The name of the exported photo file.
+         * @return The value to store in the photo column, or null if the photo could not be copied.
+         */
+        @Nullable
+        String importPhoto(String photoFile);
+    }
+
+    private final JsonReader reader;
+    private final PhotoImporter photoImporter;
+
+    /**
+     * Opens the document and moves to the start of the recipes array.
+     *
+     * @param in            The JSON document.
+     * @param photoImporter Optional importer for the photos, can be null to ignore the photo files.
+     */
+    public RecipeJsonReader(Reader in, @Nullable PhotoImporter photoImporter) throws IOException {
+        this.reader = new JsonReader(in);
+        this.photoImporter = photoImporter;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (RecipeJsonWriter.FIELD_VERSION.equals(name)) {
+                int version = reader.nextInt();
+                if (version > RecipeJsonWriter.FORMAT_VERSION) {
+                    throw new IOException("Unsupported recipes file version " + version);
+                }
+            } else if (RecipeJsonWriter.FIELD_RECIPES.equals(name)) {
+                reader.beginArray();
+                return;
+            } else {
+                reader.skipValue();
+            }
+        }
+        throw new IOException("No recipes found in the file");
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return reader.hasNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Recipe next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return readRecipe();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Recipe readRecipe() throws IOException {
+        Recipe.Builder recipe = new Recipe.Builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case RecipeJsonWriter.FIELD_TITLE:
+                    recipe.setTitle(reader.nextString());
+                    break;
+                case RecipeJsonWriter.FIELD_RESUME:
+                    recipe.setResume(reader.nextString());
+                    break;
+                case RecipeJsonWriter.FIELD_DETAILS:
+                    recipe.setDetails(reader.nextString());
+                    break;
+                case RecipeJsonWriter.FIELD_PHOTO:
+                    recipe.setPhoto(reader.nextString());
+                    break;
+                case RecipeJsonWriter.FIELD_PHOTO_FILE:
+                    String photoFile = reader.nextString();
+                    if (photoImporter != null) {
+                        recipe.setPhoto(photoImporter.importPhoto(photoFile));
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return recipe.build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
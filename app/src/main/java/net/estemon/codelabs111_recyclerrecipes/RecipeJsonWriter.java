@@ -0,0 +1,95 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+import android.util.JsonWriter;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes recipes to a JSON document one at a time, straight from a {@link Cursor}.
+ * <p>
+ * The document has the form {@code {"version": 1, "recipes": [{...}, {...}]}}. Only the row the
+ * cursor is on is held in memory, so tables of any size can be exported.
+ */
+public class RecipeJsonWriter implements Closeable {
+
+    static final int FORMAT_VERSION = 1;
+
+    static final String FIELD_VERSION = "version";
+    static final String FIELD_RECIPES = "recipes";
+    static final String FIELD_TITLE = "title";
+    static final String FIELD_RESUME = "resume";
+    static final String FIELD_DETAILS = "details";
+    // Photo copied next to the JSON file, relative to the photos directory
+    static final String FIELD_PHOTO_FILE = "photoFile";
+    // Photo that could not be copied, the original URI is kept as is
+    static final String FIELD_PHOTO = "photo";
+
+    /**
+     * Copies the photo of a recipe out of the app.
+     */
+    public interface PhotoExporter {
+
+        /**
+         * @param photo The value of the photo column.
+         * @return The name of the exported file, or null if the photo could not be copied.
+         */
+        @Nullable
+        String exportPhoto(String photo);
+    }
+
+    private final JsonWriter writer;
+
+    public RecipeJsonWriter(Writer out) {
+        writer = new JsonWriter(out);
+    }
+
+    /**
+     * Writes every recipe from the current position of the cursor to its end.
+     *
+     * @param cursor        Cursor over the recipes table (all its columns).
+     * @param photoExporter Optional exporter for the photos, can be null to keep the URIs.
+     * @return The number of written recipes.
+     */
+    public int write(Cursor cursor, @Nullable PhotoExporter photoExporter) throws IOException {
+        int titleColumn = cursor.getColumnIndexOrThrow("title");
+        int resumeColumn = cursor.getColumnIndexOrThrow("resume");
+        int detailsColumn = cursor.getColumnIndexOrThrow("details");
+        int photoColumn = cursor.getColumnIndexOrThrow("photo");
+
+        writer.beginObject();
+        writer.name(FIELD_VERSION).value(FORMAT_VERSION);
+        writer.name(FIELD_RECIPES).beginArray();
+        int count = 0;
+        while (cursor.moveToNext()) {
+            writer.beginObject();
+            writer.name(FIELD_TITLE).value(cursor.getString(titleColumn));
+            writer.name(FIELD_RESUME).value(cursor.getString(resumeColumn));
+            writer.name(FIELD_DETAILS).value(cursor.getString(detailsColumn));
+            String photo = cursor.getString(photoColumn);
+            if (photo != null) {
+                String photoFile = photoExporter != null ? photoExporter.exportPhoto(photo) : null;
+                if (photoFile != null) {
+                    writer.name(FIELD_PHOTO_FILE).value(photoFile);
+                } else {
+                    writer.name(FIELD_PHOTO).value(photo);
+                }
+            }
+            writer.endObject();
+            count++;
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,122 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.net.Uri;
+
+import androidx.room.Ignore;
+
+import java.util.Objects;
+
+/**
+ * Lightweight projection of a {@link Recipe} with only the columns shown in the list.
+ * The {@code details} column is left out on purpose: it is only loaded, by id, when the
+ * detail dialog of a recipe is opened.
+ */
+public class RecipeListItem {
+
+    private final int id;
+    private final String title;
+    private final String resume;
+    private final String photo;
+    private final String thumbnail;
+    private final long modifiedAt;
+
+    // Computed once per recipe and reused on every bind of its row
+    @Ignore
+    private String idLabel;
+    @Ignore
+    private Uri listPhotoUri;
+
+    public RecipeListItem(int id, String title, String resume, String photo, String thumbnail, long modifiedAt) {
+        this.id = id;
+        this.title = title;
+        this.resume = resume;
+        this.photo = photo;
+        this.thumbnail = thumbnail;
+        this.modifiedAt = modifiedAt;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getResume() {
+        return resume;
+    }
+
+    public String getPhoto() {
+        return photo;
+    }
+
+    public String getThumbnail() {
+        return thumbnail;
+    }
+
+    /**
+     * Needed to continue the pages sorted by modification date, see {@link RecipeListQuery}.
+     */
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    /**
+     * Returns the image to show in the list: the thumbnail if it has been created,
+     * the original photo otherwise.
+     */
+    public String getListPhoto() {
+        return thumbnail != null ? thumbnail : photo;
+    }
+
+    /**
+     * Returns {@link #getListPhoto()} parsed as a Uri, or null if the recipe has no photo.
+     * It is parsed only the first time.
+     */
+    public Uri getListPhotoUri() {
+        if (listPhotoUri == null) {
+            String listPhoto = getListPhoto();
+            if (listPhoto != null) {
+                listPhotoUri = Uri.parse(listPhoto);
+            }
+        }
+        return listPhotoUri;
+    }
+
+    /**
+     * Whether this is a recipe shown before it has been inserted, with a temporary negative id
+     * (see {@link PendingRecipeWrites}).
+     */
+    public boolean isPending() {
+        return id < 0;
+    }
+
+    /**
+     * Returns the label with the id shown in the list row. It is built only the first time.
+     */
+    public String getIdLabel() {
+        if (idLabel == null) {
+            idLabel = isPending() ? "id: …" : "id: " + id;
+        }
+        return idLabel;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RecipeListItem that = (RecipeListItem) o;
+        return id == that.id
+                && Objects.equals(title, that.title)
+                && Objects.equals(resume, that.resume)
+                && Objects.equals(photo, that.photo)
+                && Objects.equals(thumbnail, that.thumbnail)
+                && modifiedAt == that.modifiedAt;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, resume, photo, thumbnail, modifiedAt);
+    }
+}
@@ -0,0 +1,259 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Sort mode and filters of the recipe list, and the keyset queries that page it.
+ * <p>
+ * Every sort mode walks an index of the {@code recipes} table in order (the primary key, or the
+ * {@code title} and {@code modifiedAt} indices, which end with the id), and every page continues
+ * from the sort key of the last recipe loaded, so the database never sorts nor skips rows. The
+ * page before a loaded one walks the same index backwards from its first recipe.
+ * The filters are a range of the {@code title} index (title prefix) or a condition checked while
+ * walking it (has photo). {@code RecipeListQueryTest} checks the plans of all the combinations.
+ * <p>
+ * It is immutable.
+ */
+public final class RecipeListQuery {
+
+    public enum SortMode {
+        /** In the order they were created, the original order of the list. */
+        OLDEST,
+        /** The last created first. */
+        NEWEST,
+        /** Alphabetically by title. */
+        TITLE,
+        /** The last modified first. */
+        MODIFIED
+    }
+
+    public static final RecipeListQuery DEFAULT = new RecipeListQuery(SortMode.OLDEST, false, null);
+
+    private static final String COLUMNS = "SELECT id, title, resume, photo, thumbnail, modifiedAt FROM recipes";
+
+    private final SortMode sortMode;
+    private final boolean onlyWithPhoto;
+    @Nullable
+    private final String titlePrefix;
+
+    public RecipeListQuery(SortMode sortMode, boolean onlyWithPhoto, @Nullable String titlePrefix) {
+        this.sortMode = sortMode;
+        this.onlyWithPhoto = onlyWithPhoto;
+        this.titlePrefix = titlePrefix == null || titlePrefix.isEmpty() ? null : titlePrefix;
+    }
+
+    public SortMode getSortMode() {
+        return sortMode;
+    }
+
+    public boolean isOnlyWithPhoto() {
+        return onlyWithPhoto;
+    }
+
+    @Nullable
+    public String getTitlePrefix() {
+        return titlePrefix;
+    }
+
+    public RecipeListQuery withSortMode(SortMode sortMode) {
+        return new RecipeListQuery(sortMode, onlyWithPhoto, titlePrefix);
+    }
+
+    public RecipeListQuery withOnlyWithPhoto(boolean onlyWithPhoto) {
+        return new RecipeListQuery(sortMode, onlyWithPhoto, titlePrefix);
+    }
+
+    public RecipeListQuery withTitlePrefix(@Nullable String titlePrefix) {
+        return new RecipeListQuery(sortMode, onlyWithPhoto, titlePrefix);
+    }
+
+    /**
+     * The first {@code limit} recipes of the list.
+     */
+    public SupportSQLiteQuery firstPage(int limit) {
+        return build(null, false, limit);
+    }
+
+    /**
+     * The {@code limit} recipes that follow {@code last} in the list.
+     */
+    public SupportSQLiteQuery pageAfter(RecipeListItem last, int limit) {
+        return build(last, false, limit);
+    }
+
+    /**
+     * The {@code limit} recipes of the list that end with {@code last}, included, in reverse
+     * order: the nearest to {@code last} first.
+     */
+    public SupportSQLiteQuery pageUpTo(RecipeListItem last, int limit) {
+        return build(last, true, limit);
+    }
+
+    /**
+     * Whether the recipe passes the filters of the list, as the queries check them.
+     */
+    public boolean matches(RecipeListItem recipe) {
+        if (onlyWithPhoto && recipe.getPhoto() == null) {
+            return false;
+        }
+        return titlePrefix == null || (recipe.getTitle() != null && recipe.getTitle().startsWith(titlePrefix));
+    }
+
+    /**
+     * Position in {@code recipes}, a window of the list sorted in this order, of a recipe just
+     * created: the last one by id and by modification date.
+     *
+     * @param recipes     The loaded window of the list.
+     * @param startLoaded Whether the window starts at the top of the list.
+     * @param endLoaded   Whether the window ends at the bottom of the list.
+     * @return The position, or -1 if the recipe goes before or after the window, among the
+     * recipes that are not loaded.
+     */
+    public int positionOfNew(List<RecipeListItem> recipes, RecipeListItem recipe, boolean startLoaded, boolean endLoaded) {
+        int position;
+        switch (sortMode) {
+            case NEWEST:
+            case MODIFIED:
+                position = 0;
+                break;
+            case TITLE:
+                String title = recipe.getTitle() != null ? recipe.getTitle() : "";
+                position = recipes.size();
+                for (int i = 0; i < recipes.size(); i++) {
+                    String other = recipes.get(i).getTitle();
+                    // The same order as the title index: ties go after, they have a lower id
+                    if (other != null && other.compareTo(title) > 0) {
+                        position = i;
+                        break;
+                    }
+                }
+                break;
+            default:
+                position = recipes.size();
+                break;
+        }
+        if ((position == 0 && !startLoaded) || (position == recipes.size() && !endLoaded)) {
+            return -1;
+        }
+        return position;
+    }
+
+    private SupportSQLiteQuery build(@Nullable RecipeListItem last, boolean upTo, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (last != null) {
+            addKeysetCondition(last, upTo, conditions, args);
+        } else if (sortMode == SortMode.OLDEST || sortMode == SortMode.NEWEST) {
+            // An open range of the primary key, so the first page is read like the others
+            conditions.add(sortMode == SortMode.OLDEST ? "id > ?" : "id < ?");
+            args.add(sortMode == SortMode.OLDEST ? Long.MIN_VALUE : Long.MAX_VALUE);
+        }
+        if (onlyWithPhoto) {
+            conditions.add("photo IS NOT NULL");
+        }
+        if (titlePrefix != null) {
+            // A range of the title index; LIKE would need a case insensitive index
+            conditions.add("title >= ? AND title < ?");
+            args.add(titlePrefix);
+            args.add(titlePrefix + Character.MAX_VALUE);
+        }
+        StringBuilder sql = new StringBuilder(COLUMNS);
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY ").append(upTo ? reverseOrderBy() : orderBy());
+        sql.append(" LIMIT ").append(limit);
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Rows after {@code last} in the sort order, or up to it when {@code upTo} is set.
+     * The ties of the sort key are broken by id, which is the last column of every index.
+     * The conditions are written as {@code key >= ? AND (key > ? OR id > ?)} rather than with
+     * an OR of both columns, so SQLite can use the first part as the range of the index.
+     */
+    private void addKeysetCondition(RecipeListItem last, boolean upTo, List<String> conditions, List<Object> args) {
+        switch (sortMode) {
+            case OLDEST:
+                conditions.add(upTo ? "id <= ?" : "id > ?");
+                args.add(last.getId());
+                break;
+            case NEWEST:
+                conditions.add(upTo ? "id >= ?" : "id < ?");
+                args.add(last.getId());
+                break;
+            case TITLE:
+                if (last.getTitle() == null) {
+                    // Untitled rows of older versions, until EMPTY_TITLES_BACKFILL: NULL goes
+                    // before every title, and a range of titles never includes it
+                    conditions.add(upTo
+                            ? "title IS NULL AND id <= ?"
+                            : "(title IS NULL AND id > ? OR title IS NOT NULL)");
+                    args.add(last.getId());
+                    break;
+                }
+                conditions.add(upTo
+                        ? "title <= ? AND (title < ? OR id <= ?)"
+                        : "title >= ? AND (title > ? OR id > ?)");
+                args.add(last.getTitle());
+                args.add(last.getTitle());
+                args.add(last.getId());
+                break;
+            case MODIFIED:
+                conditions.add(upTo
+                        ? "modifiedAt >= ? AND (modifiedAt > ? OR id >= ?)"
+                        : "modifiedAt <= ? AND (modifiedAt < ? OR id < ?)");
+                args.add(last.getModifiedAt());
+                args.add(last.getModifiedAt());
+                args.add(last.getId());
+                break;
+        }
+    }
+
+    private String reverseOrderBy() {
+        switch (sortMode) {
+            case NEWEST:
+                return "id";
+            case TITLE:
+                return "title DESC, id DESC";
+            case MODIFIED:
+                return "modifiedAt, id";
+            default:
+                return "id DESC";
+        }
+    }
+
+    private String orderBy() {
+        switch (sortMode) {
+            case NEWEST:
+                return "id DESC";
+            case TITLE:
+                return "title, id";
+            case MODIFIED:
+                return "modifiedAt DESC, id DESC";
+            default:
+                return "id";
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RecipeListQuery that = (RecipeListQuery) o;
+        return sortMode == that.sortMode
+                && onlyWithPhoto == that.onlyWithPhoto
+                && Objects.equals(titlePrefix, that.titlePrefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sortMode, onlyWithPhoto, titlePrefix);
+    }
+}
@@ -0,0 +1,473 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Loads recipes from the DB one page at a time and keeps the pages around the screen up to date.
+ * <p>
+ * The whole list is paged with keyset pagination in the order of its {@link RecipeListQuery}:
+ * every page continues from the sort key of the last recipe loaded (for example
+ * {@code WHERE id > lastId ORDER BY id LIMIT n}), so only the rows that are (or are about to be)
+ * on screen are read, no matter how big the table is. When a search query is set, the ranked
+ * results of the full-text index are paged by offset instead.
+ * <p>
+ * At most {@link #MAX_LOADED} recipes are kept: the pages farthest from the screen are dropped as
+ * the list is scrolled, and loaded again (backwards, when they were above it) when the list is
+ * scrolled back to them.
+ * <p>
+ * Writes to the {@code recipes} table are followed with an {@link InvalidationTracker} observer.
+ * After a write only the pages that are, or are about to be, on screen are queried again, in a
+ * single query; the other pages may be out of date and are dropped. The writes made while a query
+ * runs are picked up by one more query when it finishes, so a burst of writes is followed by one
+ * or two queries, and the pages requested before a change of query are discarded.
+ * All public methods must be called from the UI thread; results are delivered there too.
+ * <p>
+ * Recipes saved from the UI are shown before the database has them, see {@link #applyWrite}.
+ */
+public class RecipePager {
+
+    public static final int PAGE_SIZE = 50;
+
+    // Number of rows left beyond the visible ones that triggers loading the next (or previous) page
+    public static final int PREFETCH_DISTANCE = 15;
+
+    // Recipes kept loaded, the pages beyond them are dropped
+    public static final int MAX_LOADED = 4 * PAGE_SIZE;
+
+    /**
+     * A run of loaded recipes and where it starts: after the sort key of {@code after} in the
+     * list, or at {@code offset} in the search results.
+     */
+    private static final class Page {
+
+        @Nullable
+        final RecipeListItem after;
+        final int offset;
+        // Whether nothing comes before it
+        final boolean first;
+        final List<RecipeListItem> items;
+
+        Page(@Nullable RecipeListItem after, int offset, boolean first, List<RecipeListItem> items) {
+            this.after = after;
+            this.offset = offset;
+            this.first = first;
+            this.items = items;
+        }
+
+        /**
+         * Where the page that follows this one starts in the list.
+         */
+        @Nullable
+        RecipeListItem last() {
+            return items.isEmpty() ? after : items.get(items.size() - 1);
+        }
+    }
+
+    private final RecipeDao recipeDao;
+    private final InvalidationTracker invalidationTracker;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final PendingRecipeWrites pendingWrites = new PendingRecipeWrites();
+
+    private final MutableLiveData<List<RecipeListItem>> recipes = new MutableLiveData<List<RecipeListItem>>() {
+        @Override
+        protected void onActive() {
+            // The table changed while nobody was looking
+            if (stale) {
+                refresh();
+            }
+        }
+    };
+
+    // Registered by the first query, on the executor, because it reads the database
+    private final AtomicBoolean observing = new AtomicBoolean();
+    private final InvalidationTracker.Observer tableObserver = new InvalidationTracker.Observer("recipes") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            mainHandler.post(RecipePager.this::onTableChanged);
+        }
+    };
+
+    // Loaded pages, one after the other, and their recipes without the pending writes
+    private final List<Page> pages = new ArrayList<>();
+    private List<RecipeListItem> loaded = Collections.emptyList();
+
+    // Sort mode and filters of the list, ignored while searching
+    private RecipeListQuery listQuery = RecipeListQuery.DEFAULT;
+
+    // Full-text query (see RecipeSearchQuery), null to page the whole list
+    @Nullable
+    private String searchQuery;
+
+    // Visible rows, as positions in the shown list: the new recipes not saved yet may shift them a bit
+    private int firstVisible;
+    private int lastVisible;
+
+    private boolean loading;
+    private boolean endReached;
+    // Whether the table has changed since the loaded pages were read
+    private boolean stale;
+
+    // Increased on every change of query so that pages requested before it are discarded
+    private int generation;
+
+    /**
+     * Constructor for the RecipePager.
+     *
+     * @param recipeDao           The DAO used to query the pages.
+     * @param invalidationTracker The tracker of the database, to follow the writes to the recipes.
+     * @param executor            The executor where the page queries are run.
+     */
+    public RecipePager(RecipeDao recipeDao, InvalidationTracker invalidationTracker, Executor executor) {
+        this.recipeDao = recipeDao;
+        this.invalidationTracker = invalidationTracker;
+        this.executor = executor;
+    }
+
+    /**
+     * The loaded recipes, in display order. A new list is emitted when a page is loaded or
+     * dropped and when the recipes on screen (or the table) change. The pages are queried again
+     * after a write only while this LiveData is observed.
+     */
+    public LiveData<List<RecipeListItem>> getRecipes() {
+        return recipes;
+    }
+
+    /**
+     * Stops following the writes to the table, when the pager is no longer used.
+     */
+    public void close() {
+        generation++;
+        executor.execute(() -> invalidationTracker.removeObserver(tableObserver));
+    }
+
+    /**
+     * Switches between paging the whole list (null query) and paging search results.
+     * The current pages are replaced by the first page of the new query.
+     *
+     * @param matchQuery Full-text query built with {@link RecipeSearchQuery}, or null.
+     */
+    public void setSearchQuery(@Nullable String matchQuery) {
+        if (Objects.equals(searchQuery, matchQuery)) {
+            return;
+        }
+        searchQuery = matchQuery;
+        reload();
+    }
+
+    /**
+     * Changes the sort mode and filters of the list. The current pages are replaced by the
+     * first page in the new order.
+     */
+    public void setListQuery(RecipeListQuery query) {
+        if (listQuery.equals(query)) {
+            return;
+        }
+        listQuery = query;
+        if (searchQuery == null) {
+            reload();
+        }
+    }
+
+    public RecipeListQuery getListQuery() {
+        return listQuery;
+    }
+
+    /**
+     * Shows a recipe being saved right away, before the database has it.
+     *
+     * @param recipe The recipe as it is written, with a temporary negative id if it is new.
+     * @return The version of the write, for {@link #confirmWrite} or {@link #rollbackWrite}.
+     */
+    public long applyWrite(RecipeListItem recipe) {
+        long version = pendingWrites.apply(recipe);
+        publish();
+        return version;
+    }
+
+    /**
+     * Shows the recipe as it has been saved, with its real id, until the loaded list has it.
+     *
+     * @param id      The id of the recipe given to {@link #applyWrite}.
+     * @param version The version returned by {@link #applyWrite}.
+     * @param saved   The recipe as it has been saved.
+     */
+    public void confirmWrite(int id, long version, RecipeListItem saved) {
+        pendingWrites.confirm(id, version, saved);
+        publish();
+    }
+
+    /**
+     * Stops showing a write that failed: the row shows the recipe as it is in the database again.
+     */
+    public void rollbackWrite(int id, long version) {
+        if (pendingWrites.rollback(id, version)) {
+            publish();
+        }
+    }
+
+    /**
+     * Stops showing the pending writes of recipes that have been deleted.
+     */
+    public void forgetWrites(Collection<Integer> ids) {
+        if (pendingWrites.forget(ids)) {
+            publish();
+        }
+    }
+
+    private void setLoaded() {
+        List<RecipeListItem> recipes = new ArrayList<>(MAX_LOADED + PAGE_SIZE);
+        for (Page page : pages) {
+            recipes.addAll(page.items);
+        }
+        loaded = recipes;
+        publish();
+    }
+
+    private void publish() {
+        if (pendingWrites.isEmpty()) {
+            recipes.setValue(loaded);
+            return;
+        }
+        // New recipes are placed only in the list; search results just show the edits
+        RecipeListQuery placement = searchQuery == null ? listQuery : null;
+        boolean startLoaded = !pages.isEmpty() && pages.get(0).first;
+        pendingWrites.pruneHidden(loaded, placement, startLoaded, endReached);
+        recipes.setValue(pendingWrites.merge(loaded, placement, startLoaded, endReached));
+    }
+
+    private void reload() {
+        pendingWrites.clearConfirmed();
+        generation++;
+        // The loaded pages are shown until the first page of the new query replaces them
+        pages.clear();
+        firstVisible = 0;
+        lastVisible = 0;
+        loading = false;
+        endReached = false;
+        stale = false;
+        loadNextPage();
+    }
+
+    /**
+     * Loads the page that follows the last loaded recipe, unless a load is already running
+     * or there are no more recipes.
+     */
+    public void loadNextPage() {
+        if (loading || endReached) {
+            return;
+        }
+        final boolean replace = pages.isEmpty();
+        final Page last = replace ? null : pages.get(pages.size() - 1);
+        final RecipeListItem after = last != null ? last.last() : null;
+        final int offset = last != null ? last.offset + last.items.size() : 0;
+        final String query = searchQuery;
+        final RecipeListQuery pageQuery = listQuery;
+        load(() -> query != null
+                        ? recipeDao.searchRecipes(query, RecipeSearchQuery.toTitleQuery(query), PAGE_SIZE, offset)
+                        : recipeDao.getRecipeListItems(after == null
+                                ? pageQuery.firstPage(PAGE_SIZE)
+                                : pageQuery.pageAfter(after, PAGE_SIZE)),
+                page -> {
+                    endReached = page.size() < PAGE_SIZE;
+                    // An empty page doesn't change the list, except the very first one
+                    if (replace || !page.isEmpty()) {
+                        pages.add(new Page(after, offset, replace, page));
+                        trim();
+                        setLoaded();
+                    }
+                });
+    }
+
+    /**
+     * Loads the page that comes before the first loaded recipe, when the pages above the
+     * screen have been dropped.
+     */
+    private void loadPreviousPage() {
+        if (loading || pages.isEmpty() || pages.get(0).first) {
+            return;
+        }
+        final Page next = pages.get(0);
+        final String query = searchQuery;
+        if (query != null) {
+            final int offset = Math.max(0, next.offset - PAGE_SIZE);
+            load(() -> recipeDao.searchRecipes(query, RecipeSearchQuery.toTitleQuery(query), next.offset - offset, offset),
+                    page -> prepend(new Page(null, offset, offset == 0, page)));
+        } else {
+            final RecipeListQuery pageQuery = listQuery;
+            // One more row than the page, nearest first: where the page starts, if there is one
+            load(() -> recipeDao.getRecipeListItems(pageQuery.pageUpTo(Objects.requireNonNull(next.after), PAGE_SIZE + 1)),
+                    rows -> {
+                        boolean first = rows.size() <= PAGE_SIZE;
+                        List<RecipeListItem> page = new ArrayList<>(rows.subList(0, Math.min(rows.size(), PAGE_SIZE)));
+                        Collections.reverse(page);
+                        prepend(new Page(first ? null : rows.get(PAGE_SIZE), 0, first, page));
+                    });
+        }
+    }
+
+    private void prepend(Page page) {
+        pages.add(0, page);
+        // The rows on screen stay where they are, below the new ones
+        firstVisible += page.items.size();
+        lastVisible += page.items.size();
+        trim();
+        setLoaded();
+    }
+
+    /**
+     * Queries again the pages around the screen after a write, and drops the others, which may
+     * be out of date. If a load is running it is done when it finishes.
+     */
+    private void refresh() {
+        if (loading) {
+            return;
+        }
+        stale = false;
+        if (pages.isEmpty()) {
+            return;
+        }
+        final int from = pageAt(firstVisible - PREFETCH_DISTANCE);
+        final int to = pageAt(lastVisible + PREFETCH_DISTANCE);
+        final Page start = pages.get(from);
+        int size = 0;
+        for (int i = from; i <= to; i++) {
+            size += pages.get(i).items.size();
+        }
+        final int limit = Math.max(size, PAGE_SIZE);
+        final String query = searchQuery;
+        final RecipeListQuery pageQuery = listQuery;
+        load(() -> query != null
+                        ? recipeDao.searchRecipes(query, RecipeSearchQuery.toTitleQuery(query), limit, start.offset)
+                        : recipeDao.getRecipeListItems(start.after == null
+                                ? pageQuery.firstPage(limit)
+                                : pageQuery.pageAfter(start.after, limit)),
+                page -> {
+                    for (int i = 0; i < from; i++) {
+                        firstVisible -= pages.get(i).items.size();
+                        lastVisible -= pages.get(i).items.size();
+                    }
+                    pages.clear();
+                    pages.add(new Page(start.after, start.offset, start.first, page));
+                    endReached = page.size() < limit;
+                    setLoaded();
+                });
+    }
+
+    /**
+     * Runs the query on the executor and hands its result to {@code onLoaded} on the UI thread,
+     * unless the query of the pager has changed in between.
+     */
+    private void load(Supplier<List<RecipeListItem>> query, Consumer<List<RecipeListItem>> onLoaded) {
+        loading = true;
+        final int requestGeneration = generation;
+        executor.execute(() -> {
+            if (observing.compareAndSet(false, true)) {
+                invalidationTracker.addObserver(tableObserver);
+            }
+            List<RecipeListItem> page = query.get();
+            mainHandler.post(() -> {
+                if (requestGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                pendingWrites.prune(page);
+                onLoaded.accept(page);
+                if (stale && recipes.hasActiveObservers()) {
+                    refresh();
+                } else {
+                    loadAroundScreen();
+                }
+            });
+        });
+    }
+
+    private void onTableChanged() {
+        stale = true;
+        if (recipes.hasActiveObservers()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Drops the pages farthest from the screen while there are more than {@link #MAX_LOADED}
+     * recipes loaded. The pages with visible rows are kept.
+     */
+    private void trim() {
+        int size = 0;
+        for (Page page : pages) {
+            size += page.items.size();
+        }
+        while (size > MAX_LOADED && pages.size() > 1) {
+            int above = firstVisible;
+            int below = size - 1 - lastVisible;
+            Page page;
+            if (above >= below && pages.get(0).items.size() <= above) {
+                page = pages.remove(0);
+                firstVisible -= page.items.size();
+                lastVisible -= page.items.size();
+            } else if (pages.get(pages.size() - 1).items.size() <= below) {
+                page = pages.remove(pages.size() - 1);
+                endReached = false;
+            } else {
+                return;
+            }
+            size -= page.items.size();
+        }
+    }
+
+    /**
+     * Index of the loaded page with the row at {@code position}, the first or the last one if
+     * it is out of the loaded rows.
+     */
+    private int pageAt(int position) {
+        int end = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            end += pages.get(i).items.size();
+            if (position < end) {
+                return i;
+            }
+        }
+        return pages.size() - 1;
+    }
+
+    private void loadAroundScreen() {
+        if (lastVisible >= loaded.size() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+        if (firstVisible < PREFETCH_DISTANCE) {
+            loadPreviousPage();
+        }
+    }
+
+    /**
+     * Updates the visible rows, and loads the next (or previous) page when they are close
+     * enough to the end (or the start) of the loaded recipes.
+     *
+     * @param firstVisiblePosition The adapter position of the first visible row.
+     * @param lastVisiblePosition  The adapter position of the last visible row.
+     */
+    public void onScrolled(int firstVisiblePosition, int lastVisiblePosition) {
+        firstVisible = firstVisiblePosition;
+        lastVisible = lastVisiblePosition;
+        loadAroundScreen();
+    }
+}
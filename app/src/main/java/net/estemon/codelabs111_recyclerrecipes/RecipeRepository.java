@@ -0,0 +1,218 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Single access point to the recipes for the UI, shared by the whole process.
+ * <p>
+ * Complete recipes (with their details) are read through a {@link RecipeCache}, and every write
+ * made here goes to the database on the writer thread of {@link IoScheduler} and then to the
+ * cache (write-through), so later reads of the same recipe don't go back to SQLite.
+ * The list itself is paged and observed by {@link RecipePager} with {@link #getRecipeDao()}.
+ * The DAO records the latency of its calls in {@link Metrics}.
+ * <p>
+ * Deleted recipes are kept for {@link #UNDO_WINDOW_MILLIS} in a {@link RecipeUndoBuffer}, so the
+ * deletion can be undone.
+ * <p>
+ * The photos of the {@link PhotoStore} that no recipe uses anymore, after a recipe gets another
+ * photo or once a deletion can't be undone, are deleted right away.
+ */
+public class RecipeRepository {
+
+    private static final String TAG = "RecipeRepository";
+
+    /**
+     * How long a deletion can be undone with {@link #undoDelete()}.
+     */
+    public static final int UNDO_WINDOW_MILLIS = 8000;
+
+    private static volatile RecipeRepository instance;
+
+    private final RecipeDao recipeDao;
+    private final RecipeCache cache;
+    @Nullable
+    private final PhotoStore photoStore;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final RecipeUndoBuffer undoBuffer = new RecipeUndoBuffer(UNDO_WINDOW_MILLIS);
+
+    RecipeRepository(RecipeDao recipeDao, RecipeCache cache, @Nullable PhotoStore photoStore) {
+        this.recipeDao = recipeDao;
+        this.cache = cache;
+        this.photoStore = photoStore;
+    }
+
+    /**
+     * Returns the repository shared by the whole process, built the first time it is requested.
+     *
+     * @param context Any context, only its application context is used.
+     */
+    public static RecipeRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (RecipeRepository.class) {
+                if (instance == null) {
+                    instance = new RecipeRepository(
+                            AppDatabase.getInstance(context).recipeDao(),
+                            new RecipeCache(RecipeCache.DEFAULT_MAX_SIZE_BYTES),
+                            PhotoStore.create(context));
+                }
+            }
+        }
+        return instance;
+    }
+
+    public RecipeDao getRecipeDao() {
+        return recipeDao;
+    }
+
+    /**
+     * Returns the complete recipe, from the cache if possible. Must not be called on the UI thread.
+     *
+     * @return The recipe, or null if it doesn't exist. It is immutable and may be the instance
+     * shared through the cache: changes are made on a copy, with {@link Recipe#toBuilder()}.
+     */
+    @Nullable
+    @WorkerThread
+    public Recipe getRecipe(int id) {
+        Recipe recipe = cache.get(id);
+        if (recipe == null) {
+            recipe = recipeDao.getRecipeById(id);
+            if (recipe != null) {
+                cache.put(recipe);
+            }
+        }
+        return recipe;
+    }
+
+    /**
+     * Loads the complete recipe and delivers it on the UI thread. When the recipe is cached
+     * the callback runs right away, without leaving the calling (UI) thread.
+     *
+     * @param id       Id of the recipe.
+     * @param onLoaded Receives the (immutable) recipe, or null if it doesn't exist.
+     */
+    public void loadRecipe(int id, Consumer<Recipe> onLoaded) {
+        Recipe cached = cache.get(id);
+        if (cached != null) {
+            onLoaded.accept(cached);
+            return;
+        }
+        IoScheduler.get().read(() -> {
+            Recipe recipe = getRecipe(id);
+            mainHandler.post(() -> onLoaded.accept(recipe));
+        });
+    }
+
+    /**
+     * Inserts the recipe (id 0) or replaces the one with its id, with its ingredients and steps,
+     * and caches it. Its modification date is set to now. It can be called from any thread.
+     *
+     * @param recipe  The recipe to save.
+     * @param onSaved Optional callback that receives, on the UI thread, the recipe as it has been
+     *                saved (with its id and modification date), or null if it couldn't be saved.
+     */
+    public void saveRecipe(Recipe recipe, @Nullable Consumer<Recipe> onSaved) {
+        Recipe stamped = recipe.toBuilder().setModifiedAt(System.currentTimeMillis()).build();
+        IoScheduler.get().write(() -> {
+            Recipe saved = null;
+            try {
+                Recipe previous = stamped.getId() != 0 ? getRecipe(stamped.getId()) : null;
+                saved = stamped.withId((int) recipeDao.saveRecipeWithContent(stamped));
+                cache.put(saved);
+                if (previous != null && !Objects.equals(previous.getPhoto(), saved.getPhoto())) {
+                    releasePhoto(previous.getPhoto());
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Can't save recipe " + stamped.getId(), e);
+            }
+            if (onSaved != null) {
+                Recipe result = saved;
+                mainHandler.post(() -> onSaved.accept(result));
+            }
+        });
+    }
+
+    /**
+     * Deletes the recipes in a single transaction and keeps them to undo the deletion.
+     *
+     * @param ids       Ids of the recipes.
+     * @param onDeleted Optional callback that receives, on the UI thread, the number of recipes deleted.
+     */
+    public void deleteRecipes(Collection<Integer> ids, @Nullable Consumer<Integer> onDeleted) {
+        List<Integer> toDelete = new ArrayList<>(ids);
+        IoScheduler.get().write(() -> {
+            List<Recipe> deleted = recipeDao.deleteRecipesReturning(toDelete);
+            for (Recipe recipe : deleted) {
+                cache.remove(recipe.getId());
+            }
+            // The previous deletion can't be undone anymore
+            releasePhotos(undoBuffer.put(deleted, SystemClock.elapsedRealtime()));
+            // Releases the recipes, and their photos, once they can't be restored anymore
+            mainHandler.postDelayed(() -> releasePhotos(undoBuffer.expire(SystemClock.elapsedRealtime())),
+                    UNDO_WINDOW_MILLIS);
+            if (onDeleted != null) {
+                mainHandler.post(() -> onDeleted.accept(deleted.size()));
+            }
+        });
+    }
+
+    /**
+     * Restores the recipes of the last deletion, if it was less than {@link #UNDO_WINDOW_MILLIS}
+     * ago, in a single transaction.
+     */
+    public void undoDelete() {
+        List<Recipe> recipes = undoBuffer.take(SystemClock.elapsedRealtime());
+        if (recipes == null || recipes.isEmpty()) {
+            return;
+        }
+        IoScheduler.get().write(() -> {
+            recipeDao.restoreRecipes(recipes);
+            for (Recipe recipe : recipes) {
+                cache.put(recipe);
+            }
+        });
+    }
+
+    private void releasePhotos(@Nullable List<Recipe> recipes) {
+        if (recipes != null && photoStore != null) {
+            IoScheduler.get().write(() -> {
+                for (Recipe recipe : recipes) {
+                    releasePhoto(recipe.getPhoto());
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes the photo if it is in the store and no recipe uses it. Only on the writer thread.
+     */
+    @WorkerThread
+    private void releasePhoto(@Nullable String photo) {
+        if (photoStore != null) {
+            photoStore.releaseIfUnused(recipeDao, photo);
+        }
+    }
+
+    /**
+     * Forgets the cached recipes after writes made without the repository, such as an import.
+     */
+    public void invalidateCache() {
+        cache.clear();
+    }
+
+    public RecipeCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+}
@@ -0,0 +1,65 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Builds the full-text queries run against {@link RecipeFts} from the text typed by the user.
+ * <p>
+ * The text is split into words, dropping the characters that have a meaning in the FTS query
+ * syntax (quotes, {@code *}, {@code -}, {@code :}, parentheses...), and every word is matched as
+ * a prefix, so results show up while the user is still typing. All the words must match.
+ */
+public final class RecipeSearchQuery {
+
+    private static final String TITLE_COLUMN = "title:";
+
+    private RecipeSearchQuery() {
+    }
+
+    /**
+     * Converts the typed text into a MATCH query, for example {@code "Tarta de"} into
+     * {@code "tarta* de*"}.
+     *
+     * @param text The text typed by the user.
+     * @return The MATCH query, or null if the text has no words to search for.
+     */
+    @Nullable
+    public static String toMatchQuery(@Nullable String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int length = lowerCase.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(lowerCase.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(lowerCase.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append(lowerCase, start, i).append('*');
+            }
+        }
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Restricts every word of a query built by {@link #toMatchQuery(String)} to the title column.
+     * It is used to rank the recipes whose title matches before the rest.
+     *
+     * @param matchQuery A query built by {@link #toMatchQuery(String)}.
+     * @return The same query limited to the title column.
+     */
+    public static String toTitleQuery(String matchQuery) {
+        return TITLE_COLUMN + matchQuery.replace(" ", " " + TITLE_COLUMN);
+    }
+}
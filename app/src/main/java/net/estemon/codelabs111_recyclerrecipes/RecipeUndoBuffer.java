@@ -0,0 +1,77 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * The last batch of deleted recipes, kept in memory for a limited time so the deletion can be
+ * undone by inserting them back at once (see {@link RecipeDao#restoreRecipes}).
+ * <p>
+ * Only one batch is kept: a new deletion replaces the previous one, which can't be undone
+ * anymore. Every batch that can't be restored anymore is handed back once, by {@link #put} or
+ * {@link #expire}, so the caller can release it (its photos, for example). Times are given by the
+ * caller, in milliseconds of a monotonic clock.
+ */
+public class RecipeUndoBuffer {
+
+    private final long windowMillis;
+
+    private List<Recipe> recipes;
+    private long expiresAt;
+
+    /**
+     * @param windowMillis How long a deletion can be undone.
+     */
+    public RecipeUndoBuffer(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Keeps the deleted recipes, replacing the previous batch.
+     *
+     * @return The previous batch, which can't be restored anymore, or null if there was none.
+     */
+    @Nullable
+    public synchronized List<Recipe> put(List<Recipe> deleted, long nowMillis) {
+        List<Recipe> displaced = recipes;
+        recipes = deleted;
+        expiresAt = nowMillis + windowMillis;
+        return displaced;
+    }
+
+    /**
+     * Returns the last deleted recipes and forgets them, so they are restored only once.
+     * Once the time to undo is over they are kept instead, and returned by {@link #expire}.
+     *
+     * @return The recipes, or null if there are none or the time to undo is over.
+     */
+    @Nullable
+    public synchronized List<Recipe> take(long nowMillis) {
+        if (nowMillis >= expiresAt) {
+            return null;
+        }
+        List<Recipe> taken = recipes;
+        recipes = null;
+        return taken;
+    }
+
+    /**
+     * Forgets the recipes if the time to undo is over, to release their memory and their photos.
+     *
+     * @return The recipes forgotten now, or null if there are none or they can still be restored.
+     */
+    @Nullable
+    public synchronized List<Recipe> expire(long nowMillis) {
+        if (nowMillis < expiresAt) {
+            return null;
+        }
+        List<Recipe> expired = recipes;
+        recipes = null;
+        return expired;
+    }
+
+    public synchronized boolean isEmpty() {
+        return recipes == null;
+    }
+}
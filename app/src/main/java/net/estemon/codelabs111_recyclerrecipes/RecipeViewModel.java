@@ -0,0 +1,144 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * State of the recipes screen that survives configuration changes.
+ * <p>
+ * It owns the {@link RecipePager}, so the pages already loaded (and the search in progress) are
+ * kept when the activity is recreated instead of being queried again, and goes through
+ * {@link RecipeRepository} for complete recipes and writes.
+ */
+public class RecipeViewModel extends AndroidViewModel {
+
+    private final RecipeRepository repository;
+    private final RecipePager pager;
+    private boolean started;
+
+    // Next temporary id for the recipes shown before they are inserted
+    private int nextPendingId = -1;
+
+    public RecipeViewModel(@NonNull Application application) {
+        super(application);
+        repository = RecipeRepository.getInstance(application);
+        pager = new RecipePager(repository.getRecipeDao(),
+                AppDatabase.getInstance(application).getInvalidationTracker(), IoScheduler.get().reads());
+    }
+
+    @Override
+    protected void onCleared() {
+        pager.close();
+    }
+
+    /**
+     * Loads the first page of recipes. Only the first call does something, so the screen can
+     * call it every time it is created and still keep the pages loaded before a recreation.
+     */
+    public void start() {
+        if (!started) {
+            started = true;
+            pager.loadNextPage();
+        }
+    }
+
+    /**
+     * The recipes loaded in the list, see {@link RecipePager#getRecipes()}.
+     */
+    public LiveData<List<RecipeListItem>> getRecipes() {
+        return pager.getRecipes();
+    }
+
+    public void setSearchQuery(@Nullable String matchQuery) {
+        pager.setSearchQuery(matchQuery);
+    }
+
+    public void setListQuery(RecipeListQuery query) {
+        pager.setListQuery(query);
+    }
+
+    public RecipeListQuery getListQuery() {
+        return pager.getListQuery();
+    }
+
+    public void onScrolled(int firstVisiblePosition, int lastVisiblePosition) {
+        pager.onScrolled(firstVisiblePosition, lastVisiblePosition);
+    }
+
+    /**
+     * See {@link RecipeRepository#loadRecipe(int, Consumer)}.
+     */
+    public void loadRecipe(int id, Consumer<Recipe> onLoaded) {
+        repository.loadRecipe(id, onLoaded);
+    }
+
+    /**
+     * Saves the recipe and shows it in the list right away, before it is written: a new recipe
+     * (id 0) appears with a temporary id, which is replaced by its real id once it is inserted.
+     * If the write fails, the list goes back to what is in the database.
+     * <p>
+     * When a photo has just been taken, the recipe is written once it has been added to the
+     * {@link PhotoStore} and its thumbnails have been generated, and the list shows the capture
+     * in the meantime.
+     *
+     * @param recipe     The recipe to save.
+     * @param thumbnails The thumbnails being generated for a new photo of the recipe, or null.
+     * @param onFailed   Optional callback run on the UI thread if the recipe couldn't be saved.
+     */
+    public void saveRecipe(Recipe recipe, @Nullable CompletableFuture<ThumbnailGenerator.Result> thumbnails,
+                           @Nullable Runnable onFailed) {
+        int shownId = recipe.getId() != 0 ? recipe.getId() : nextPendingId--;
+        long version = pager.applyWrite(recipe.toBuilder()
+                .setId(shownId)
+                .setModifiedAt(System.currentTimeMillis())
+                .build()
+                .toListItem());
+        Consumer<Recipe> onSaved = saved -> {
+            if (saved != null) {
+                pager.confirmWrite(shownId, version, saved.toListItem());
+            } else {
+                pager.rollbackWrite(shownId, version);
+                if (onFailed != null) {
+                    onFailed.run();
+                }
+            }
+        };
+        if (thumbnails == null) {
+            repository.saveRecipe(recipe, onSaved);
+            return;
+        }
+        // The photo of the store replaces the capture, which is the one shown meanwhile
+        thumbnails.whenComplete((result, error) -> repository.saveRecipe(result == null ? recipe
+                : recipe.toBuilder()
+                        .setPhoto(result.photo)
+                        .setThumbnail(result.thumbnail)
+                        .setDetailPhoto(result.detailPhoto)
+                        .build(),
+                onSaved));
+    }
+
+    /**
+     * See {@link RecipeRepository#deleteRecipes(Collection, Consumer)}.
+     */
+    public void deleteRecipes(Collection<Integer> ids, @Nullable Consumer<Integer> onDeleted) {
+        pager.forgetWrites(ids);
+        repository.deleteRecipes(ids, onDeleted);
+    }
+
+    public void undoDelete() {
+        repository.undoDelete();
+    }
+
+    public RecipeRepository getRepository() {
+        return repository;
+    }
+}
@@ -0,0 +1,23 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.room.Embedded;
+import androidx.room.Relation;
+
+import java.util.List;
+
+/**
+ * A recipe with its ingredients and steps, loaded by {@link RecipeDao#getRecipeWithContent(int)}.
+ * Room loads each relation with one query over the {@code recipeId} index, so both lists come
+ * in the order of their {@code position}.
+ */
+public class RecipeWithContent {
+
+    @Embedded
+    public Recipe recipe;
+
+    @Relation(parentColumn = "id", entityColumn = "recipeId")
+    public List<Ingredient> ingredients;
+
+    @Relation(parentColumn = "id", entityColumn = "recipeId")
+    public List<Step> steps;
+}
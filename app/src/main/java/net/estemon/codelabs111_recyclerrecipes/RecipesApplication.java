@@ -0,0 +1,35 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+
+/**
+ * Application class of the app. Debuggable builds record {@link Metrics}.
+ * <p>
+ * Nothing touches a database while the process starts: the first activity draws its first frame
+ * and then calls {@link #startDeferredWork()}, which opens the database and schedules the
+ * background maintenance of the app.
+ */
+public class RecipesApplication extends Application {
+
+    private boolean deferredWorkStarted;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Metrics.setEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+    }
+
+    /**
+     * Opens the database in the background and schedules the cleanup of the photos.
+     * Only the first call does something. Must be called on the UI thread.
+     */
+    public void startDeferredWork() {
+        if (deferredWorkStarted) {
+            return;
+        }
+        deferredWorkStarted = true;
+        AppDatabase.warmUp(this);
+        PhotoCleanupWorker.schedule(this);
+    }
+}
@@ -0,0 +1,39 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+
+/**
+ * Glide configuration of the app. The memory and disk cache sizes are read from
+ * {@code res/values/glide.xml}, so they can be adjusted per device with resource qualifiers.
+ */
+@GlideModule
+public class RecipesGlideModule extends AppGlideModule {
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        Resources resources = context.getResources();
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(resources.getInteger(R.integer.glide_memory_cache_screens))
+                .setBitmapPoolScreens(resources.getInteger(R.integer.glide_bitmap_pool_screens))
+                .build();
+        builder.setMemorySizeCalculator(calculator);
+
+        long diskCacheBytes = resources.getInteger(R.integer.glide_disk_cache_size_mb) * 1024L * 1024L;
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, diskCacheBytes));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        // No library in the app declares its Glide modules in the manifest
+        return false;
+    }
+}
@@ -0,0 +1,67 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Collects the timings of the app start, measured from the moment the process was started.
+ * They are written to the log with the tag {@value #TAG}.
+ */
+public final class StartupMetrics {
+
+    private static final String TAG = "StartupMetrics";
+
+    private static volatile long databaseOpenMillis = -1;
+    private static volatile long databaseReadyMillis = -1;
+    private static volatile long firstPageMillis = -1;
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * Milliseconds elapsed since the process was started.
+     */
+    public static long sinceProcessStart() {
+        return SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+    }
+
+    static void onDatabaseOpened(long openMillis) {
+        databaseOpenMillis = openMillis;
+        databaseReadyMillis = sinceProcessStart();
+        Log.i(TAG, "Database opened in " + openMillis + "ms, ready "
+                + databaseReadyMillis + "ms after process start");
+    }
+
+    /**
+     * Records when the first page of recipes has been shown. Only the first call counts.
+     */
+    static void onFirstPageShown() {
+        if (firstPageMillis >= 0) {
+            return;
+        }
+        firstPageMillis = sinceProcessStart();
+        Log.i(TAG, "First page of recipes shown " + firstPageMillis + "ms after process start");
+    }
+
+    /**
+     * Time it took to open the database, or -1 if it has not been opened yet.
+     */
+    public static long getDatabaseOpenMillis() {
+        return databaseOpenMillis;
+    }
+
+    /**
+     * Time from process start until the database was open, or -1 if it has not been opened yet.
+     */
+    public static long getDatabaseReadyMillis() {
+        return databaseReadyMillis;
+    }
+
+    /**
+     * Time from process start until the first page of recipes was shown, or -1 if it has not been shown yet.
+     */
+    public static long getFirstPageMillis() {
+        return firstPageMillis;
+    }
+}
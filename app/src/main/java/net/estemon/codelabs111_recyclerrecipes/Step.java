@@ -0,0 +1,56 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One step of the instructions of a recipe, parsed from its details by {@link RecipeDetailsParser}.
+ * They are deleted with their recipe.
+ */
+@Entity(tableName = "steps",
+        foreignKeys = @ForeignKey(entity = Recipe.class, parentColumns = "id", childColumns = "recipeId",
+                onDelete = ForeignKey.CASCADE),
+        indices = @Index(value = {"recipeId", "position"}, unique = true))
+public class Step {
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    private final int recipeId;
+
+    // Position in the instructions of the recipe, from 0
+    private final int position;
+
+    @NonNull
+    private final String text;
+
+    public Step(int recipeId, int position, @NonNull String text) {
+        this.recipeId = recipeId;
+        this.position = position;
+        this.text = text;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getRecipeId() {
+        return recipeId;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    @NonNull
+    public String getText() {
+        return text;
+    }
+}
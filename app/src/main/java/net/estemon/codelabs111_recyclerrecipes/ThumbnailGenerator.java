@@ -0,0 +1,206 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Adds a captured photo to the {@link PhotoStore} and creates, once per photo, the smaller copies
+ * shown by the app:
+ * <ul>
+ *     <li>A thumbnail sized for the photo of the list rows ({@code R.dimen.recipe_thumbnail_size}).</li>
+ *     <li>A detail image sized for the photo of the detail dialog ({@code R.dimen.recipe_detail_photo_size}).</li>
+ * </ul>
+ * The full resolution JPEG is decoded only here, subsampled, instead of on every bind of the list.
+ * The copies are written next to the photo, named after it, and shared through
+ * {@link CustomFileProvider}. A photo that is already in the store keeps its copies.
+ */
+public class ThumbnailGenerator {
+
+    private static final String TAG = "ThumbnailGenerator";
+
+    private static final int JPEG_QUALITY = 85;
+
+    private static final String THUMBNAIL_SUFFIX = "_thumb";
+    private static final String DETAIL_SUFFIX = "_detail";
+
+    // Decoding is memory hungry, so the photos are processed one at a time
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "recipes-thumbnails"));
+
+    private final Context context;
+    @Nullable
+    private final PhotoStore photoStore;
+    private final int thumbnailSize;
+    private final int detailSize;
+
+    /**
+     * Paths of the photo in the store and of the images created for it, as URIs of
+     * {@link CustomFileProvider}. The images are null if they could not be created.
+     */
+    public static final class Result {
+
+        public final String photo;
+        @Nullable
+        public final String thumbnail;
+        @Nullable
+        public final String detailPhoto;
+
+        Result(String photo, @Nullable String thumbnail, @Nullable String detailPhoto) {
+            this.photo = photo;
+            this.thumbnail = thumbnail;
+            this.detailPhoto = detailPhoto;
+        }
+    }
+
+    public ThumbnailGenerator(Context context) {
+        this.context = context.getApplicationContext();
+        this.photoStore = PhotoStore.create(context);
+        this.thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.recipe_thumbnail_size);
+        this.detailSize = context.getResources().getDimensionPixelSize(R.dimen.recipe_detail_photo_size);
+    }
+
+    /**
+     * Adds a captured photo to the store and creates its thumbnail and detail image, on a
+     * background thread.
+     *
+     * @param capture The full resolution photo written by the camera.
+     * @return A future completed with the photo of the store and its images, or completed
+     * exceptionally if the photo could not be stored (the capture can still be used then).
+     */
+    public CompletableFuture<Result> generate(File capture) {
+        return CompletableFuture.supplyAsync(() -> {
+            File photoFile = capture;
+            String photo;
+            try {
+                if (photoStore != null) {
+                    PhotoStore.Photo stored = photoStore.add(capture);
+                    photoFile = stored.file;
+                    photo = stored.uri;
+                } else {
+                    photo = toUri(capture);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Can't store " + capture, e);
+                throw new IllegalStateException(e);
+            }
+            try {
+                File thumbnail = write(photoFile, thumbnailSize, THUMBNAIL_SUFFIX);
+                File detail = write(photoFile, detailSize, DETAIL_SUFFIX);
+                return new Result(photo, toUri(thumbnail), toUri(detail));
+            } catch (IOException e) {
+                Log.w(TAG, "Can't create the thumbnails of " + photoFile, e);
+                return new Result(photo, null, null);
+            }
+        }, EXECUTOR);
+    }
+
+    /**
+     * The files of the images created for a photo, whether they exist or not.
+     */
+    static List<File> copiesOf(File photoFile) {
+        return Arrays.asList(copyOf(photoFile, THUMBNAIL_SUFFIX), copyOf(photoFile, DETAIL_SUFFIX));
+    }
+
+    private static File copyOf(File photoFile, String suffix) {
+        String name = photoFile.getName();
+        int extension = name.lastIndexOf('.');
+        return new File(photoFile.getParentFile(),
+                (extension > 0 ? name.substring(0, extension) : name) + suffix + ".jpg");
+    }
+
+    private File write(File photoFile, int size, String suffix) throws IOException {
+        File target = copyOf(photoFile, suffix);
+        if (target.length() > 0) {
+            // Created for the same photo, captured or saved before
+            return target;
+        }
+        Bitmap bitmap = decodeSampled(photoFile, size);
+        if (bitmap == null) {
+            throw new IOException("Can't decode " + photoFile);
+        }
+        try {
+            bitmap = scaleAndRotate(bitmap, size, readRotation(photoFile));
+            // Written under another name first, so an incomplete image is never reused
+            File partial = new File(target.getPath() + ".partial");
+            try (OutputStream out = new FileOutputStream(partial)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            }
+            if (!partial.renameTo(target)) {
+                throw new IOException("Can't move " + partial + " to " + target);
+            }
+            return target;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Decodes the photo with the biggest power of two subsampling that still keeps its
+     * shorter side above {@code size}, so the full resolution bitmap is never allocated.
+     */
+    @Nullable
+    private static Bitmap decodeSampled(File photoFile, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(photoFile.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int shorterSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shorterSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(photoFile.getPath(), options);
+    }
+
+    /**
+     * Scales the bitmap so its shorter side is {@code size} (never upscaling) and applies the
+     * rotation the camera stored in the EXIF data.
+     */
+    private static Bitmap scaleAndRotate(Bitmap bitmap, int size, int rotation) {
+        float scale = Math.min(1f, (float) size / Math.min(bitmap.getWidth(), bitmap.getHeight()));
+        if (scale == 1f && rotation == 0) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (transformed != bitmap) {
+            bitmap.recycle();
+        }
+        return transformed;
+    }
+
+    private static int readRotation(File photoFile) {
+        try {
+            ExifInterface exif = new ExifInterface(photoFile.getPath());
+            return exif.getRotationDegrees();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private String toUri(File file) {
+        return CustomFileProvider.getUriForFile(context, CustomFileProvider.AUTHORITY, file).toString();
+    }
+}
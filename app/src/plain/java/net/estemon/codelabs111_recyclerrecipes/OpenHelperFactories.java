@@ -0,0 +1,22 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+
+/**
+ * The {@link SupportSQLiteOpenHelper.Factory} of {@link AppDatabase} in the builds without
+ * {@code -PencryptDatabase}. The builds with it compile the one of {@code src/encrypted} instead.
+ */
+final class OpenHelperFactories {
+
+    private OpenHelperFactories() {
+    }
+
+    /**
+     * Returns null, so Room opens the database with the SQLite of the platform.
+     */
+    @Nullable
+    static SupportSQLiteOpenHelper.Factory create() {
+        return null;
+    }
+}
@@ -0,0 +1,228 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Looper;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Upgrade of a database of the first version of the app, with 100k recipes, to the current one.
+ * <p>
+ * The schema migrations must not depend on the number of rows, and after the background data
+ * migrations every recipe must be as it was, and be found by the search and by its ingredients.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AppDatabaseMigrationTest {
+
+    private static final String DATABASE_NAME = "migration_test.db";
+    private static final int RECIPE_COUNT = 100_000;
+
+    // Every thousandth recipe has no title, and the default image as its photo
+    private static final int UNTITLED_INTERVAL = 1000;
+
+    // Adding columns and indices to 100k rows; the full-text index is not built here
+    private static final long SCHEMA_MIGRATION_BUDGET_MS = 5000;
+
+    private final Queue<Runnable> writerTasks = new ArrayDeque<>();
+
+    private Context context;
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        createVersion1Database(context.getDatabasePath(DATABASE_NAME));
+        database = Room.databaseBuilder(context, AppDatabase.class, DATABASE_NAME)
+                .addMigrations(AppDatabase.MIGRATIONS)
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsEveryRecipe() {
+        long start = System.nanoTime();
+        database.getOpenHelper().getWritableDatabase();
+        long schemaMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("Schema migration of " + RECIPE_COUNT + " recipes: " + schemaMillis + "ms");
+        assertTrue("Schema migration took " + schemaMillis + "ms", schemaMillis < SCHEMA_MIGRATION_BUDGET_MS);
+
+        List<DataMigrations.Progress> progress = runDataMigrations(newDataMigrations(), Integer.MAX_VALUE);
+        long dataMillis = (System.nanoTime() - start) / 1_000_000 - schemaMillis;
+        System.out.println("Data migrations of " + RECIPE_COUNT + " recipes: " + dataMillis + "ms");
+
+        assertProgressReported(progress, AppDatabase.FTS_BACKFILL.getName());
+        assertProgressReported(progress, AppDatabase.EMPTY_TITLES_BACKFILL.getName());
+        assertProgressReported(progress, AppDatabase.DETAILS_PARSE.getName());
+        assertProgressReported(progress, AppDatabase.DEFAULT_PHOTOS_CLEANUP.getName());
+        assertRecipesIntact();
+    }
+
+    @Test
+    public void interruptedDataMigration_resumesWithoutDuplicates() {
+        database.getOpenHelper().getWritableDatabase();
+        runDataMigrations(newDataMigrations(), 10);
+
+        // Writes made while the index is half built: an indexed recipe and one still pending
+        Recipe indexed = database.recipeDao().getRecipeById(1 + UNTITLED_INTERVAL / 2);
+        database.recipeDao().updateRecipe(indexed.toBuilder().setDetails(indexed.getDetails() + " tarta").build());
+        Recipe pending = database.recipeDao().getRecipeById(RECIPE_COUNT - 1);
+        database.recipeDao().updateRecipe(pending.toBuilder().setResume("Resumen de la tarta").build());
+
+        // As after the process is killed: a new runner continues from the saved position
+        writerTasks.clear();
+        runDataMigrations(newDataMigrations(), Integer.MAX_VALUE);
+
+        assertEquals(expectedTartas() + 2, search("tarta").size());
+        RecipeFixtures.assertSearchIndexIntact(database);
+    }
+
+    private DataMigrations newDataMigrations() {
+        return new DataMigrations(database, writerTasks::add,
+                AppDatabase.FTS_BACKFILL, AppDatabase.EMPTY_TITLES_BACKFILL, AppDatabase.DETAILS_PARSE,
+                AppDatabase.DEFAULT_PHOTOS_CLEANUP);
+    }
+
+    /**
+     * Runs up to {@code maxBatches} batches and returns the progress published after each one.
+     */
+    private List<DataMigrations.Progress> runDataMigrations(DataMigrations migrations, int maxBatches) {
+        List<DataMigrations.Progress> published = new ArrayList<>();
+        migrations.getProgress().observeForever(published::add);
+        migrations.start();
+        Runnable task;
+        for (int batch = 0; batch < maxBatches && (task = writerTasks.poll()) != null; batch++) {
+            task.run();
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+        return published;
+    }
+
+    private static void assertProgressReported(List<DataMigrations.Progress> progress, String name) {
+        int previous = -1;
+        boolean finished = false;
+        for (DataMigrations.Progress step : progress) {
+            if (step.name.equals(name)) {
+                assertFalse("Progress after the end of " + name, finished);
+                assertTrue(step.done >= previous);
+                assertEquals(RECIPE_COUNT, step.total);
+                previous = step.done;
+                finished = step.finished;
+            }
+        }
+        assertTrue(name + " didn't finish", finished);
+    }
+
+    private void assertRecipesIntact() {
+        RecipeDao recipeDao = database.recipeDao();
+        assertEquals(RECIPE_COUNT, recipeDao.getRecipeCount());
+        try (Cursor cursor = recipeDao.getRecipesCursor()) {
+            int position = 0;
+            while (cursor.moveToNext()) {
+                Recipe expected = RecipeFixtures.recipe(position);
+                assertEquals(position + 1, cursor.getInt(cursor.getColumnIndexOrThrow("id")));
+                boolean untitled = position % UNTITLED_INTERVAL == 0;
+                assertEquals(untitled ? "" : expected.getTitle(), cursor.getString(cursor.getColumnIndexOrThrow("title")));
+                assertEquals(expected.getResume(), cursor.getString(cursor.getColumnIndexOrThrow("resume")));
+                assertEquals(expected.getDetails(), cursor.getString(cursor.getColumnIndexOrThrow("details")));
+                assertEquals(untitled ? null : expected.getPhoto(), cursor.getString(cursor.getColumnIndexOrThrow("photo")));
+                assertTrue(cursor.isNull(cursor.getColumnIndexOrThrow("thumbnail")));
+                assertEquals(0, cursor.getLong(cursor.getColumnIndexOrThrow("modifiedAt")));
+                position++;
+            }
+        }
+
+        assertEquals(expectedTartas(), search("tarta").size());
+        assertEquals(RECIPE_COUNT, recipeDao.getRecipeListItemsWithIngredient("huevos", RECIPE_COUNT + 1).size());
+        RecipeWithContent last = recipeDao.getRecipeWithContent(RECIPE_COUNT);
+        assertEquals(2, last.ingredients.size());
+        assertEquals(2, last.steps.size());
+
+        SupportSQLiteDatabase db = database.getOpenHelper().getReadableDatabase();
+        try (Cursor cursor = db.query("PRAGMA integrity_check")) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("ok", cursor.getString(0));
+        }
+        try (Cursor cursor = db.query("PRAGMA foreign_key_check")) {
+            assertFalse("Ingredients or steps without recipe", cursor.moveToFirst());
+        }
+    }
+
+    /**
+     * Recipes titled "Tarta", except the ones that had no title.
+     */
+    private static int expectedTartas() {
+        int count = 0;
+        for (int position = 0; position < RECIPE_COUNT; position++) {
+            if (position % UNTITLED_INTERVAL != 0 && RecipeFixtures.recipe(position).getTitle().startsWith("Tarta ")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<RecipeListItem> search(String text) {
+        String query = RecipeSearchQuery.toMatchQuery(text);
+        return database.recipeDao().searchRecipes(query, RecipeSearchQuery.toTitleQuery(query), RECIPE_COUNT, 0);
+    }
+
+    /**
+     * Writes the database as the first version of the app left it: only the recipes table.
+     */
+    private static void createVersion1Database(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        try (SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null)) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `recipes` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`title` TEXT, `resume` TEXT, `details` TEXT, `photo` TEXT)");
+            db.beginTransaction();
+            try (SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO `recipes` (`title`, `resume`, `details`, `photo`) VALUES (?, ?, ?, ?)")) {
+                for (int position = 0; position < RECIPE_COUNT; position++) {
+                    Recipe recipe = RecipeFixtures.recipe(position);
+                    insert.clearBindings();
+                    insert.bindString(2, recipe.getResume());
+                    insert.bindString(3, recipe.getDetails());
+                    if (position % UNTITLED_INTERVAL == 0) {
+                        insert.bindString(4, AppDatabase.LEGACY_DEFAULT_PHOTOS[position / UNTITLED_INTERVAL % 2]);
+                    } else {
+                        insert.bindString(1, recipe.getTitle());
+                        if (recipe.getPhoto() != null) {
+                            insert.bindString(4, recipe.getPhoto());
+                        }
+                    }
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.setVersion(1);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * The schema migrations of {@link AppDatabase} from the first version exported by Room, run on a
+ * database created from the exported schema of its version ({@code app/schemas}) and validated
+ * against the schema of the next one. The migrations from older versions are checked by
+ * {@link AppDatabaseMigrationTest}, on a version 1 database built by hand.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AppDatabaseSchemaTest {
+
+    private static final String DATABASE_NAME = "schema_test.db";
+    private static final int FIRST_EXPORTED_VERSION = 5;
+    private static final int LATEST_VERSION = 8;
+
+    // The data_migrations table of DataMigrations is not part of the schema of Room
+    private static final boolean VALIDATE_DROPPED_TABLES = false;
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+
+    @Test
+    public void everyMigration_matchesTheSchemaOfItsVersion() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(DATABASE_NAME, FIRST_EXPORTED_VERSION)) {
+            db.execSQL("INSERT INTO `recipes` (`title`, `resume`, `details`, `photo`) VALUES (?, ?, ?, ?)",
+                    new Object[]{"Tarta de queso", "Resumen", "Ingredientes:\n- 2 huevos\n\nInstrucciones:\n1. Mezcla.",
+                            AppDatabase.LEGACY_DEFAULT_PHOTOS[0]});
+        }
+
+        for (Migration migration : AppDatabase.MIGRATIONS) {
+            if (migration.startVersion >= FIRST_EXPORTED_VERSION) {
+                helper.runMigrationsAndValidate(DATABASE_NAME, migration.endVersion, VALIDATE_DROPPED_TABLES, migration).close();
+            }
+        }
+
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(DATABASE_NAME, LATEST_VERSION, VALIDATE_DROPPED_TABLES)) {
+            try (Cursor cursor = db.query("SELECT `title`, `modifiedAt`, `thumbnail` FROM `recipes`")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("Tarta de queso", cursor.getString(0));
+                assertEquals(0, cursor.getLong(1));
+                assertTrue(cursor.isNull(2));
+                assertFalse(cursor.moveToNext());
+            }
+            // The changes to the existing rows are left to the data migrations
+            Set<String> pending = new HashSet<>();
+            try (Cursor cursor = db.query("SELECT `name` FROM `" + DataMigrations.TABLE + "`")) {
+                while (cursor.moveToNext()) {
+                    pending.add(cursor.getString(0));
+                }
+            }
+            assertEquals(new HashSet<>(Arrays.asList(AppDatabase.DEFAULT_PHOTOS_CLEANUP.getName(),
+                    AppDatabase.FTS_BACKFILL.getName())), pending);
+        }
+    }
+
+    @Test
+    public void latestSchema_isTheOneOfTheDatabase() throws IOException {
+        helper.createDatabase(DATABASE_NAME, LATEST_VERSION).close();
+
+        // Room refuses to open it if the identity hash of the exported schema is not its own
+        AppDatabase database = Room.databaseBuilder(ApplicationProvider.getApplicationContext(),
+                        AppDatabase.class, DATABASE_NAME)
+                .allowMainThreadQueries()
+                .build();
+        helper.closeWhenFinished(database);
+        assertEquals(0, database.recipeDao().getRecipeCount());
+    }
+}
@@ -0,0 +1,100 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Minimal benchmark harness for the JVM benchmarks ({@code *Benchmark} classes).
+ * <p>
+ * Each measurement runs a few warm-up iterations and then the measured ones, and keeps the
+ * time of every iteration. {@link #write()} saves the results of the suite as JSON, in a format
+ * close to the one of androidx.benchmark, to {@code app/build/outputs/benchmark/<suite>.json}
+ * so they can be compared between builds to catch regressions.
+ * <p>
+ * The benchmarks are not run by the normal test task, see {@code app/build.gradle}:
+ * {@code ./gradlew testDebugUnitTest -PrunBenchmarks}
+ */
+final class BenchmarkRecorder {
+
+    /**
+     * Code measured by the benchmark.
+     */
+    interface Body {
+        void run() throws Exception;
+    }
+
+    private final String suite;
+    private final List<String> results = new ArrayList<>();
+
+    BenchmarkRecorder(String suite) {
+        this.suite = suite;
+    }
+
+    /**
+     * Measures {@code body}, running {@code beforeEach} (not measured) before every iteration.
+     *
+     * @param name       Name of the benchmark.
+     * @param params     Parameters of the benchmark as {@code key=value} pairs, for the report.
+     * @param warmUps    Number of iterations run before measuring.
+     * @param iterations Number of measured iterations.
+     * @param beforeEach Optional setup of every iteration, can be null.
+     * @param body       The measured code.
+     * @return The median time of an iteration, in nanoseconds.
+     */
+    long measure(String name, String params, int warmUps, int iterations, Body beforeEach, Body body) throws Exception {
+        for (int i = 0; i < warmUps; i++) {
+            if (beforeEach != null) {
+                beforeEach.run();
+            }
+            body.run();
+        }
+        long[] runs = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            if (beforeEach != null) {
+                beforeEach.run();
+            }
+            long start = System.nanoTime();
+            body.run();
+            runs[i] = System.nanoTime() - start;
+        }
+        long[] sorted = runs.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        long p90 = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.9) - 1)];
+
+        StringBuilder json = new StringBuilder();
+        json.append("    {\"name\": \"").append(name).append("\", \"params\": \"").append(params)
+                .append("\", \"metrics\": {\"timeNs\": {")
+                .append("\"minimum\": ").append(sorted[0])
+                .append(", \"maximum\": ").append(sorted[sorted.length - 1])
+                .append(", \"median\": ").append(median)
+                .append(", \"p90\": ").append(p90)
+                .append(", \"runs\": ").append(Arrays.toString(runs))
+                .append("}}}");
+        results.add(json.toString());
+        System.out.println(String.format(Locale.ROOT, "%s.%s[%s]: median %.3f ms, p90 %.3f ms",
+                suite, name, params, median / 1e6, p90 / 1e6));
+        return median;
+    }
+
+    /**
+     * Writes the results measured so far to {@code <benchmark.outputDir>/<suite>.json}.
+     */
+    void write() throws IOException {
+        File outputDir = new File(System.getProperty("benchmark.outputDir", "build/outputs/benchmark"));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Can't create " + outputDir);
+        }
+        try (Writer writer = new FileWriter(new File(outputDir, suite + ".json"))) {
+            writer.write("{\n  \"suite\": \"" + suite + "\",\n  \"benchmarks\": [\n");
+            writer.write(String.join(",\n", results));
+            writer.write("\n  ]\n}\n");
+        }
+    }
+}
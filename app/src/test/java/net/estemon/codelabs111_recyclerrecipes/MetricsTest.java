@@ -0,0 +1,87 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        long start = Metrics.begin("Test.section");
+        Metrics.end("Test.section", start);
+        Metrics.record("Test.value", 1000);
+
+        assertEquals(0, start);
+        assertTrue(Metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void histogram_percentilesAreWithinTheirBucket() {
+        Metrics.setEnabled(true);
+        for (int i = 1; i <= 100; i++) {
+            Metrics.record("Test.value", TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        Metrics.Snapshot snapshot = Metrics.snapshot().get("Test.value");
+        assertEquals(100, snapshot.count);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), snapshot.maxNanos);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5050) / 100, snapshot.meanNanos());
+        // Buckets are powers of two: the estimate is never below the value, and at most twice it
+        long p50 = snapshot.percentileNanos(50);
+        assertTrue(p50 >= TimeUnit.MICROSECONDS.toNanos(50) && p50 < TimeUnit.MICROSECONDS.toNanos(100));
+        assertEquals(snapshot.maxNanos, snapshot.percentileNanos(100));
+    }
+
+    @Test
+    public void sections_areTimedUntilTheyEnd() throws InterruptedException {
+        Metrics.setEnabled(true);
+        long start = Metrics.begin("Test.section");
+        Thread.sleep(5);
+        Metrics.end("Test.section", start);
+
+        Metrics.Snapshot snapshot = Metrics.snapshot().get("Test.section");
+        assertEquals(1, snapshot.count);
+        assertTrue(snapshot.maxNanos >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void instrumentedDao_recordsEveryCall() {
+        AppDatabase database = RecipeFixtures.inMemoryDatabase();
+        try {
+            RecipeDao recipeDao = database.recipeDao();
+            Metrics.setEnabled(true);
+
+            int id = (int) recipeDao.insertRecipe(RecipeFixtures.recipe(1));
+            recipeDao.getRecipeById(id);
+            recipeDao.getRecipeById(id);
+            recipeDao.getRecipeListItemsWithIngredient("harina", 10);
+            recipeDao.deleteRecipesByIds(Arrays.asList(id, id + 1));
+
+            Map<String, Metrics.Snapshot> snapshot = Metrics.snapshot();
+            assertEquals(1, snapshot.get("RecipeDao.insertRecipe").count);
+            assertEquals(2, snapshot.get("RecipeDao.getRecipeById").count);
+            assertEquals(1, snapshot.get("RecipeDao.deleteRecipesByIds").count);
+            // Default methods run on the generated DAO, their inner queries aren't recorded again
+            assertEquals(1, snapshot.get("RecipeDao.getRecipeListItemsWithIngredient").count);
+            assertNull(snapshot.get("RecipeDao.getRecipeListItemsWithIngredientRange"));
+            assertEquals(0, recipeDao.getRecipeCount());
+        } finally {
+            database.close();
+        }
+    }
+}
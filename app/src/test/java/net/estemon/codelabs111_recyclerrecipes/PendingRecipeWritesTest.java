@@ -0,0 +1,112 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingRecipeWritesTest {
+
+    private static final RecipeListQuery BY_TITLE = RecipeListQuery.DEFAULT.withSortMode(RecipeListQuery.SortMode.TITLE);
+
+    private final PendingRecipeWrites writes = new PendingRecipeWrites();
+
+    private final List<RecipeListItem> loaded = Arrays.asList(item(1, "Arroz", 10), item(2, "Tarta", 10));
+
+    @Test
+    public void newRecipe_isShownInItsPlaceUntilTheListHasIt() {
+        long version = writes.apply(item(-1, "Lentejas", 20));
+
+        assertEquals(Arrays.asList(1, -1, 2), ids(writes.merge(loaded, BY_TITLE, true, true)));
+        assertEquals(Arrays.asList(1, 2, -1), ids(writes.merge(loaded, RecipeListQuery.DEFAULT, true, true)));
+        // Search results only show the edits
+        assertEquals(Arrays.asList(1, 2), ids(writes.merge(loaded, null, true, true)));
+
+        writes.confirm(-1, version, item(3, "Lentejas", 21));
+        assertEquals(Arrays.asList(1, 3, 2), ids(writes.merge(loaded, BY_TITLE, true, true)));
+        // A list loaded before the write committed doesn't remove it
+        assertFalse(writes.prune(loaded));
+
+        List<RecipeListItem> withNew = Arrays.asList(loaded.get(0), item(3, "Lentejas", 21), loaded.get(1));
+        assertTrue(writes.prune(withNew));
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void edit_replacesTheRowAndIsRolledBack() {
+        long version = writes.apply(item(2, "Tarta de queso", 20));
+
+        List<RecipeListItem> merged = writes.merge(loaded, BY_TITLE, true, true);
+        assertEquals(Arrays.asList(1, 2), ids(merged));
+        assertEquals("Tarta de queso", merged.get(1).getTitle());
+
+        assertTrue(writes.rollback(2, version));
+        assertEquals(loaded, writes.merge(loaded, BY_TITLE, true, true));
+    }
+
+    @Test
+    public void olderWrite_doesNotOverrideANewerOne() {
+        long first = writes.apply(item(2, "Tarta 1", 20));
+        writes.apply(item(2, "Tarta 2", 21));
+
+        writes.confirm(2, first, item(2, "Tarta 1", 22));
+        assertFalse(writes.rollback(2, first));
+
+        assertEquals("Tarta 2", writes.merge(loaded, BY_TITLE, true, true).get(1).getTitle());
+    }
+
+    @Test
+    public void filteredOutRecipes_areNotInserted() {
+        writes.apply(item(-1, "Sin foto", 20));
+
+        assertEquals(2, writes.merge(loaded, RecipeListQuery.DEFAULT.withOnlyWithPhoto(true), true, true).size());
+        assertEquals(2, writes.merge(loaded, RecipeListQuery.DEFAULT.withTitlePrefix("Tar"), true, true).size());
+        assertTrue(writes.forget(Collections.singletonList(-1)));
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void newRecipe_afterAPartialWindow_isNotShownAndForgottenWhenConfirmed() {
+        // The oldest recipes first, with more pages to load: the new recipe goes after all of them
+        long version = writes.apply(item(-1, "Lentejas", 20));
+
+        assertEquals(Arrays.asList(1, 2), ids(writes.merge(loaded, RecipeListQuery.DEFAULT, true, false)));
+        assertFalse(writes.pruneHidden(loaded, RecipeListQuery.DEFAULT, true, false));
+
+        writes.confirm(-1, version, item(3, "Lentejas", 21));
+        assertTrue(writes.pruneHidden(loaded, RecipeListQuery.DEFAULT, true, false));
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    public void newRecipe_beforeATrimmedWindow_isNotShownAndForgottenWhenConfirmed() {
+        // The newest recipes first, with the top pages dropped: the new recipe goes above them
+        RecipeListQuery newest = RecipeListQuery.DEFAULT.withSortMode(RecipeListQuery.SortMode.NEWEST);
+        long version = writes.apply(item(-1, "Lentejas", 20));
+
+        assertEquals(Arrays.asList(1, 2), ids(writes.merge(loaded, newest, false, true)));
+        assertEquals(Arrays.asList(-1, 1, 2), ids(writes.merge(loaded, newest, true, true)));
+        // Its place by title is inside the window, wherever the window starts
+        assertEquals(Arrays.asList(1, -1, 2), ids(writes.merge(loaded, BY_TITLE, false, false)));
+
+        writes.confirm(-1, version, item(3, "Lentejas", 21));
+        assertFalse(writes.pruneHidden(loaded, newest, true, true));
+        assertTrue(writes.pruneHidden(loaded, newest, false, true));
+        assertTrue(writes.isEmpty());
+    }
+
+    private static RecipeListItem item(int id, String title, long modifiedAt) {
+        return new RecipeListItem(id, title, "Resumen", null, null, modifiedAt);
+    }
+
+    private static List<Integer> ids(List<RecipeListItem> recipes) {
+        Integer[] ids = new Integer[recipes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = recipes.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+}
@@ -0,0 +1,132 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Time Glide takes to decode a captured photo: at full resolution, downsampled to the size of
+ * the list rows, and from the thumbnail written by {@link ThumbnailGenerator}.
+ * <p>
+ * Uses the native graphics of Robolectric so the JPEGs are really decoded. The memory and disk
+ * caches are skipped, every iteration measures a decode.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class PhotoDecodeBenchmark {
+
+    // A 12MP photo, as taken by most phone cameras
+    private static final int PHOTO_WIDTH = 4032;
+    private static final int PHOTO_HEIGHT = 3024;
+
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BenchmarkRecorder recorder = new BenchmarkRecorder("PhotoDecodeBenchmark");
+
+    // FutureTarget.get() can't be called from the main thread
+    private final ExecutorService waiter = Executors.newSingleThreadExecutor();
+
+    private Context context;
+    private int thumbnailSize;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.recipe_thumbnail_size);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        waiter.shutdown();
+        Glide.tearDown();
+        recorder.write();
+    }
+
+    @Test
+    public void fullResolution() throws Exception {
+        File photo = writeJpeg("photo.jpg", PHOTO_WIDTH, PHOTO_HEIGHT);
+        recorder.measure("fullResolution", PHOTO_WIDTH + "x" + PHOTO_HEIGHT, 2, ITERATIONS,
+                null,
+                () -> decode(photo, com.bumptech.glide.request.target.Target.SIZE_ORIGINAL));
+    }
+
+    @Test
+    public void downsampledToRow() throws Exception {
+        File photo = writeJpeg("photo.jpg", PHOTO_WIDTH, PHOTO_HEIGHT);
+        recorder.measure("downsampledToRow", PHOTO_WIDTH + "x" + PHOTO_HEIGHT + ",size=" + thumbnailSize,
+                2, ITERATIONS,
+                null,
+                () -> decode(photo, thumbnailSize));
+    }
+
+    @Test
+    public void thumbnail() throws Exception {
+        File photo = writeJpeg("photo_thumb.jpg", thumbnailSize * PHOTO_WIDTH / PHOTO_HEIGHT, thumbnailSize);
+        recorder.measure("thumbnail", "size=" + thumbnailSize, 2, ITERATIONS * 10,
+                null,
+                () -> decode(photo, thumbnailSize));
+    }
+
+    private void decode(File photo, int size) throws Exception {
+        FutureTarget<Bitmap> target = Glide.with(context)
+                .asBitmap()
+                .load(photo)
+                .override(size)
+                .fitCenter()
+                .skipMemoryCache(true)
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .submit();
+        Bitmap bitmap = waiter.submit(target::get).get();
+        assertTrue(bitmap.getWidth() > 0);
+        Glide.with(context).clear(target);
+        shadowOf(context.getMainLooper()).idle();
+    }
+
+    /**
+     * Writes a JPEG of noise, which compresses (and decodes) like a photo rather than like a flat image.
+     */
+    private File writeJpeg(String name, int width, int height) throws Exception {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Random random = new Random(42);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = 0xFF000000 | random.nextInt(0x1000000);
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        File file = folder.newFile(name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+        return file;
+    }
+}
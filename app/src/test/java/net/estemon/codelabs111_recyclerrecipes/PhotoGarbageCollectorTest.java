@@ -0,0 +1,95 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class PhotoGarbageCollectorTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(1000);
+    private static final long OLD = NOW - 2 * PhotoGarbageCollector.DEFAULT_GRACE_PERIOD_MILLIS;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AppDatabase database;
+    private File photosDir;
+
+    @Before
+    public void setUp() throws IOException {
+        database = RecipeFixtures.inMemoryDatabase();
+        photosDir = folder.newFolder("Pictures");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void collect_deletesOnlyOldOrphans() throws IOException {
+        File photo = newFile("JPEG_1.jpg", 1000, OLD);
+        File thumbnail = newFile("JPEG_1_thumb.jpg", 100, OLD);
+        File detail = newFile("JPEG_1_detail.jpg", 300, OLD);
+        File cancelled = newFile("JPEG_2.jpg", 2000, OLD);
+        File deletedRecipeThumbnail = newFile("JPEG_3_thumb.jpg", 200, OLD);
+        File justCaptured = newFile("JPEG_4.jpg", 4000, NOW - 1000);
+
+        database.recipeDao().insertRecipe(new Recipe.Builder()
+                .setTitle("Receta")
+                .setPhoto(uri(photo))
+                .setThumbnail(uri(thumbnail))
+                .setDetailPhoto(uri(detail))
+                .build());
+        database.recipeDao().insertRecipe(new Recipe.Builder()
+                .setTitle("Ejemplo")
+                .setPhoto("content://net.estemon.codelabs111_recyclerrecipes/drawable/ic_add")
+                .build());
+
+        PhotoGarbageCollector.Result result = new PhotoGarbageCollector(database.recipeDao(), photosDir,
+                PhotoGarbageCollector.DEFAULT_GRACE_PERIOD_MILLIS).collect(NOW);
+
+        assertEquals(2, result.deletedFiles);
+        assertEquals(2200, result.reclaimedBytes);
+        assertEquals(4, result.keptFiles);
+        assertTrue(photo.exists());
+        assertTrue(thumbnail.exists());
+        assertTrue(detail.exists());
+        assertTrue(justCaptured.exists());
+        assertFalse(cancelled.exists());
+        assertFalse(deletedRecipeThumbnail.exists());
+    }
+
+    @Test
+    public void fileName_ignoresOtherUris() {
+        assertEquals("a.jpg", PhotoGarbageCollector.fileName(
+                "content://" + CustomFileProvider.AUTHORITY + "/external_files/a.jpg"));
+        assertNull(PhotoGarbageCollector.fileName("content://other.provider/external_files/a.jpg"));
+        assertNull(PhotoGarbageCollector.fileName(null));
+    }
+
+    private File newFile(String name, int length, long lastModified) throws IOException {
+        File file = new File(photosDir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+
+    private static String uri(File file) {
+        return "content://" + CustomFileProvider.AUTHORITY + "/external_files/" + file.getName();
+    }
+}
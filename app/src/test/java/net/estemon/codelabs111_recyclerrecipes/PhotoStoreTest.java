@@ -0,0 +1,140 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class PhotoStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AppDatabase database;
+    private File storeDir;
+    private PhotoStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        database = RecipeFixtures.inMemoryDatabase();
+        storeDir = new File(folder.newFolder("Pictures"), PhotoStore.DIRECTORY);
+        store = new PhotoStore(storeDir, PhotoStoreTest::uri);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void add_storesTheSameBytesOnce() throws IOException {
+        File first = newCapture("JPEG_1.jpg", 1);
+        File second = newCapture("JPEG_2.jpg", 1);
+        File other = newCapture("JPEG_3.jpg", 2);
+
+        PhotoStore.Photo photo = store.add(first);
+        assertEquals(photo.uri, store.add(second).uri);
+        assertNotEquals(photo.uri, store.add(other).uri);
+
+        assertEquals(2, storeDir.list().length);
+        assertEquals(PhotoStore.hash(first) + ".jpg", photo.file.getName());
+        assertEquals(first.length(), photo.file.length());
+        // The captures are left to the garbage collector
+        assertTrue(first.exists());
+        assertTrue(second.exists());
+    }
+
+    @Test
+    public void releaseIfUnused_deletesThePhotoAndItsCopiesWithoutReferences() throws IOException {
+        PhotoStore.Photo photo = store.add(newCapture("JPEG_1.jpg", 1));
+        for (File copy : ThumbnailGenerator.copiesOf(photo.file)) {
+            assertTrue(copy.createNewFile());
+        }
+        RecipeDao recipeDao = database.recipeDao();
+        long first = recipeDao.insertRecipe(new Recipe.Builder().setTitle("Una").setPhoto(photo.uri).build());
+        long second = recipeDao.insertRecipe(new Recipe.Builder().setTitle("Otra").setPhoto(photo.uri).build());
+
+        recipeDao.deleteRecipeById((int) first);
+        assertFalse(store.releaseIfUnused(recipeDao, photo.uri));
+        assertTrue(photo.file.exists());
+
+        recipeDao.deleteRecipeById((int) second);
+        assertTrue(store.releaseIfUnused(recipeDao, photo.uri));
+        assertFalse(photo.file.exists());
+        for (File copy : ThumbnailGenerator.copiesOf(photo.file)) {
+            assertFalse(copy.exists());
+        }
+    }
+
+    @Test
+    public void releaseIfUnused_keepsAPhotoWhoseCopiesAreUsed() throws IOException {
+        PhotoStore.Photo photo = store.add(newCapture("JPEG_1.jpg", 1));
+        List<File> copies = ThumbnailGenerator.copiesOf(photo.file);
+        RecipeDao recipeDao = database.recipeDao();
+        // A recipe that got another photo but still shows the thumbnail of this one
+        long id = recipeDao.insertRecipe(new Recipe.Builder().setTitle("Una")
+                .setThumbnail(uri(copies.get(0))).build());
+
+        assertFalse(store.releaseIfUnused(recipeDao, photo.uri));
+        assertTrue(photo.file.exists());
+
+        recipeDao.deleteRecipeById((int) id);
+        assertTrue(store.releaseIfUnused(recipeDao, photo.uri));
+    }
+
+    @Test
+    public void import_releasesThePhotosOfTheReplacedRecipes() throws IOException {
+        PhotoStore.Photo old = store.add(newCapture("JPEG_1.jpg", 1));
+        PhotoStore.Photo shared = store.add(newCapture("JPEG_2.jpg", 2));
+        PhotoStore.Photo imported = store.add(newCapture("JPEG_3.jpg", 3));
+        RecipeDao recipeDao = database.recipeDao();
+        int replaced = (int) recipeDao.insertRecipe(new Recipe.Builder().setTitle("Una").setPhoto(old.uri).build());
+        int kept = (int) recipeDao.insertRecipe(new Recipe.Builder().setTitle("Otra").setPhoto(shared.uri).build());
+        recipeDao.insertRecipe(new Recipe.Builder().setTitle("Copia").setPhoto(shared.uri).build());
+
+        new RecipeImporter(database, Runnable::run, store).importRecipes(Arrays.asList(
+                new Recipe.Builder().setId(replaced).setTitle("Una").setPhoto(imported.uri).build(),
+                new Recipe.Builder().setId(kept).setTitle("Otra").build()).iterator(), null);
+
+        assertFalse(old.file.exists());
+        // Still the photo of another recipe
+        assertTrue(shared.file.exists());
+        assertTrue(imported.file.exists());
+    }
+
+    @Test
+    public void releaseIfUnused_ignoresPhotosOutsideTheStore() throws IOException {
+        File capture = newCapture("JPEG_1.jpg", 1);
+
+        assertFalse(store.releaseIfUnused(database.recipeDao(),
+                "content://" + CustomFileProvider.AUTHORITY + "/external_files/" + capture.getName()));
+        assertFalse(store.releaseIfUnused(database.recipeDao(), null));
+        assertTrue(capture.exists());
+    }
+
+    private File newCapture(String name, int content) throws IOException {
+        File file = new File(storeDir.getParentFile(), name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(content);
+            }
+        }
+        return file;
+    }
+
+    private static String uri(File file) {
+        return "content://" + CustomFileProvider.AUTHORITY + "/external_files/" + PhotoStore.DIRECTORY + "/" + file.getName();
+    }
+}
@@ -0,0 +1,77 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.bumptech.glide.Glide;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Latency of {@link RecipeAdapter#onCreateViewHolder} and {@link RecipeAdapter#onBindViewHolder}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipeAdapterBenchmark {
+
+    private static final int RECIPE_COUNT = 200;
+    private static final int HOLDER_COUNT = 12;
+
+    private final BenchmarkRecorder recorder = new BenchmarkRecorder("RecipeAdapterBenchmark");
+
+    private RecyclerView recyclerView;
+    private RecipeAdapter adapter;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                R.style.Theme_Codelabs111RecyclerRecipes);
+        recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(new LinearLayoutManager(context));
+        adapter = new RecipeAdapter(Glide.with(context),
+                context.getResources().getDimensionPixelSize(R.dimen.recipe_thumbnail_size));
+        List<RecipeListItem> recipes = new ArrayList<>(RECIPE_COUNT);
+        for (int i = 1; i <= RECIPE_COUNT; i++) {
+            recipes.add(new RecipeListItem(i, "Receta " + i, "Resumen de la receta " + i, null, null, 0));
+        }
+        adapter.submitList(recipes);
+        recyclerView.setAdapter(adapter);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recorder.write();
+    }
+
+    @Test
+    public void createViewHolder() throws Exception {
+        recorder.measure("createViewHolder", "", 20, 200,
+                null,
+                () -> adapter.onCreateViewHolder(recyclerView, 0));
+    }
+
+    @Test
+    public void bindViewHolder() throws Exception {
+        List<RecipeAdapter.RecipeHolder> holders = new ArrayList<>(HOLDER_COUNT);
+        for (int i = 0; i < HOLDER_COUNT; i++) {
+            holders.add(adapter.onCreateViewHolder(recyclerView, 0));
+        }
+        int[] position = {0};
+        recorder.measure("bindViewHolder", "holders=" + HOLDER_COUNT, RECIPE_COUNT, 10 * RECIPE_COUNT,
+                null,
+                () -> {
+                    int bound = position[0]++ % RECIPE_COUNT;
+                    adapter.onBindViewHolder(holders.get(bound % HOLDER_COUNT), bound);
+                });
+    }
+}
@@ -0,0 +1,147 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.bumptech.glide.Glide;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the allocations done by {@link RecipeAdapter#onBindViewHolder} while scrolling.
+ * <p>
+ * A small pool of ViewHolders is bound to a long list of recipes, the same way RecyclerView
+ * recycles them during a scroll. The bytes allocated by the binds are compared with the bytes
+ * allocated by just setting the same texts on the same views: whatever the TextViews allocate
+ * is not the adapter's, anything on top of that is.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipeAdapterBindAllocationTest {
+
+    private static final int RECIPE_COUNT = 200;
+    private static final int HOLDER_COUNT = 12;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 50;
+
+    // Slack for the measurement itself, far below one object per bind
+    private static final long TOLERANCE_BYTES = 1024;
+
+    private RecyclerView recyclerView;
+    private RecipeAdapter adapter;
+    private List<RecipeListItem> recipes;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(ApplicationProvider.getApplicationContext(),
+                R.style.Theme_Codelabs111RecyclerRecipes);
+        recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(new LinearLayoutManager(context));
+        adapter = new RecipeAdapter(Glide.with(context),
+                context.getResources().getDimensionPixelSize(R.dimen.recipe_thumbnail_size));
+
+        recipes = new ArrayList<>(RECIPE_COUNT);
+        for (int i = 1; i <= RECIPE_COUNT; i++) {
+            // Without photo, the Glide requests have their own pooling and are not measured here
+            recipes.add(new RecipeListItem(i, "Receta " + i, "Resumen de la receta " + i, null, null, 0));
+        }
+        // The first list of an empty adapter is applied synchronously
+        adapter.submitList(recipes);
+        recyclerView.setAdapter(adapter);
+    }
+
+    @Test
+    public void bind_allocatesNothingOnTopOfTheViews() {
+        List<RecipeAdapter.RecipeHolder> holders = new ArrayList<>(HOLDER_COUNT);
+        for (int i = 0; i < HOLDER_COUNT; i++) {
+            holders.add(adapter.onCreateViewHolder(recyclerView, 0));
+        }
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            scrollBind(holders);
+            scrollSetTexts(holders);
+        }
+
+        long bindBytes = 0;
+        long setTextBytes = 0;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            long start = allocatedBytes();
+            scrollBind(holders);
+            long middle = allocatedBytes();
+            scrollSetTexts(holders);
+            long end = allocatedBytes();
+            bindBytes += middle - start;
+            setTextBytes += end - middle;
+        }
+
+        long binds = (long) MEASURED_ROUNDS * RECIPE_COUNT;
+        System.out.println("RecipeAdapter bind: " + (double) bindBytes / binds + " bytes/bind, views alone: "
+                + (double) setTextBytes / binds + " bytes/bind");
+        assertTrue("The adapter allocated " + (bindBytes - setTextBytes) + " bytes in " + binds + " binds",
+                bindBytes - setTextBytes <= TOLERANCE_BYTES);
+    }
+
+    @Test
+    public void listeners_resolvePositionWhenInvoked() {
+        List<Integer> clicked = new ArrayList<>();
+        adapter.setOnRecipeClickListener(clicked::add);
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 1920);
+
+        RecyclerView.ViewHolder holder = recyclerView.findViewHolderForAdapterPosition(0);
+        assertNotNull(holder);
+        holder.itemView.performClick();
+        assertEquals(Integer.valueOf(recipes.get(0).getId()), clicked.get(0));
+    }
+
+    @Test
+    public void photoUri_isParsedOncePerRecipe() {
+        RecipeListItem recipe = new RecipeListItem(1, "Receta", "Resumen", "content://photos/1.jpg", null, 0);
+        assertSame(recipe.getListPhotoUri(), recipe.getListPhotoUri());
+        assertSame(recipe.getIdLabel(), recipe.getIdLabel());
+    }
+
+    /**
+     * Binds every recipe once, cycling through the holders like a scroll does.
+     */
+    private void scrollBind(List<RecipeAdapter.RecipeHolder> holders) {
+        for (int position = 0; position < RECIPE_COUNT; position++) {
+            adapter.onBindViewHolder(holders.get(position % HOLDER_COUNT), position);
+        }
+    }
+
+    /**
+     * Sets the same texts than {@link #scrollBind} directly on the views.
+     */
+    private void scrollSetTexts(List<RecipeAdapter.RecipeHolder> holders) {
+        for (int position = 0; position < RECIPE_COUNT; position++) {
+            RecipeAdapter.RecipeHolder holder = holders.get(position % HOLDER_COUNT);
+            RecipeListItem recipe = recipes.get(position);
+            holder.recipeIdView.setText(recipe.getIdLabel());
+            holder.recipeTitleView.setText(recipe.getTitle());
+            holder.recipeResumeView.setText(recipe.getResume());
+            // Same lookup of the photo as the bind
+            recipe.getListPhotoUri();
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
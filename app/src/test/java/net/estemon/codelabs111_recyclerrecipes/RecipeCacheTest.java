@@ -0,0 +1,73 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class RecipeCacheTest {
+
+    @Test
+    public void get_countsHitsAndMisses() {
+        RecipeCache cache = new RecipeCache(RecipeCache.DEFAULT_MAX_SIZE_BYTES);
+        cache.put(recipe(1, "Detalles"));
+
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+
+        RecipeCache.Stats stats = cache.getStats();
+        assertEquals(2, stats.hits);
+        assertEquals(1, stats.misses);
+        assertEquals(2.0 / 3, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void cachedRecipes_areNotModifiedByReaders() {
+        RecipeCache cache = new RecipeCache(RecipeCache.DEFAULT_MAX_SIZE_BYTES);
+        Recipe recipe = recipe(1, "Detalles");
+        cache.put(recipe);
+        // A change is a new snapshot, not cached until it is saved
+        Recipe changed = cache.get(1).toBuilder().setDetails("Cambiado sin guardar").build();
+
+        assertNotSame(changed, cache.get(1));
+        assertEquals("Receta 1", cache.get(1).getTitle());
+        assertEquals("Detalles", cache.get(1).getDetails());
+    }
+
+    @Test
+    public void eviction_isBoundedByTheSizeOfTheDetails() {
+        String longDetails = new String(new char[10_000]).replace('\0', 'x');
+        Recipe big = recipe(1, longDetails);
+        int bigSize = RecipeCache.sizeOfRecipe(big);
+        RecipeCache cache = new RecipeCache(bigSize * 2);
+
+        cache.put(big);
+        cache.put(recipe(2, longDetails));
+        cache.get(1); // The recipe 2 is now the least recently used
+        cache.put(recipe(3, longDetails));
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+        assertTrue(cache.getStats().sizeBytes <= bigSize * 2);
+
+        // Many small recipes fit where two big ones did
+        for (int id = 10; id < 60; id++) {
+            cache.put(recipe(id, "Detalles"));
+        }
+        assertNotNull(cache.get(10));
+        assertNotNull(cache.get(59));
+    }
+
+    private static Recipe recipe(int id, String details) {
+        return new Recipe.Builder()
+                .setId(id)
+                .setTitle("Receta " + id)
+                .setResume("Resumen")
+                .setDetails(details)
+                .build();
+    }
+}
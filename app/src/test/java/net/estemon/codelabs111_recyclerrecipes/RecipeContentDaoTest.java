@@ -0,0 +1,164 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ingredients and steps are kept in sync with the details of their recipe, and the ingredient
+ * lookups are answered through the indices of the {@code ingredients} table.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipeContentDaoTest {
+
+    private static final int RECIPE_COUNT = 300;
+
+    private AppDatabase database;
+    private RecipeDao recipeDao;
+
+    @Before
+    public void setUp() {
+        database = RecipeFixtures.inMemoryDatabase();
+        recipeDao = database.recipeDao();
+        RecipeFixtures.populate(database, RECIPE_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void import_writesTheContentOfEveryRecipe() {
+        RecipeWithContent recipe = recipeDao.getRecipeWithContent(1);
+
+        assertEquals(Arrays.asList("500g de harina", "2 huevos"), texts(recipe.ingredients));
+        assertEquals("harina", recipe.ingredients.get(0).getName());
+        assertEquals(2, recipe.steps.size());
+        assertEquals(RECIPE_COUNT, recipeDao.getRecipeListItemsWithIngredient("Harina", RECIPE_COUNT + 1).size());
+    }
+
+    @Test
+    public void save_replacesTheContent() {
+        Recipe recipe = recipeDao.getRecipeById(5);
+        recipeDao.saveRecipeWithContent(recipe.toBuilder()
+                .setDetails("Ingredientes:\n- 1 limón\n\nPasos:\n1. Exprime el limón.")
+                .build());
+
+        assertEquals(Arrays.asList("1 limón"), texts(recipeDao.getIngredients(5)));
+        assertEquals(1, recipeDao.getSteps(5).size());
+        List<RecipeListItem> withLemon = recipeDao.getRecipeListItemsWithIngredient("limon", 10);
+        assertEquals(1, withLemon.size());
+        assertEquals(5, withLemon.get(0).getId());
+        assertEquals(RECIPE_COUNT - 1, recipeDao.getRecipeListItemsWithIngredient("harina", RECIPE_COUNT).size());
+    }
+
+    @Test
+    public void save_replacesTheWordsInTheSearchIndex() {
+        Recipe recipe = recipeDao.getRecipeById(5);
+        recipeDao.saveRecipeWithContent(recipe.toBuilder().setTitle("Merengue de limón").build());
+        assertEquals(1, search("merengue").size());
+
+        recipeDao.saveRecipeWithContent(recipe.toBuilder().setTitle("Bizcocho de limón").build());
+
+        assertTrue(search("merengue").isEmpty());
+        assertEquals(5, search("bizcocho").get(0).getId());
+        RecipeFixtures.assertSearchIndexIntact(database);
+    }
+
+    @Test
+    public void search_ignoresCaseAndAccents() {
+        Recipe recipe = recipeDao.getRecipeById(5);
+        recipeDao.saveRecipeWithContent(recipe.toBuilder().setTitle("Tarta de Limón").build());
+
+        for (String text : new String[]{"Limón", "limon", "LIMÓN", "LIMON", "tárta limó"}) {
+            List<RecipeListItem> found = search(text);
+            assertEquals(text, 1, found.size());
+            assertEquals(5, found.get(0).getId());
+        }
+    }
+
+    @Test
+    public void delete_removesTheContent() {
+        recipeDao.deleteRecipesByIds(Arrays.asList(1, 2, 3));
+
+        assertTrue(recipeDao.getIngredientsOfRecipes(Arrays.asList(1, 2, 3)).isEmpty());
+        assertTrue(recipeDao.getSteps(1).isEmpty());
+        assertEquals(2 * (RECIPE_COUNT - 3), recipeDao.getIngredientsOfRecipes(ids(4, RECIPE_COUNT)).size());
+    }
+
+    @Test
+    public void deleteReturning_thenRestore_bringsBackRecipesAndContent() {
+        List<Integer> toDelete = ids(1, 600);
+        List<Recipe> deleted = recipeDao.deleteRecipesReturning(toDelete);
+
+        // Ids above the count don't exist and are ignored; more ids than one chunk of bind arguments
+        assertEquals(RECIPE_COUNT, deleted.size());
+        assertEquals(0, recipeDao.getRecipeCount());
+        assertTrue(recipeDao.getIngredientsOfRecipes(ids(1, 10)).isEmpty());
+
+        recipeDao.restoreRecipes(deleted);
+
+        assertEquals(RECIPE_COUNT, recipeDao.getRecipeCount());
+        for (Recipe recipe : deleted) {
+            assertEquals(recipe.getTitle(), recipeDao.getRecipeById(recipe.getId()).getTitle());
+        }
+        assertEquals(Arrays.asList("500g de harina", "2 huevos"), texts(recipeDao.getIngredients(7)));
+        assertEquals(2, recipeDao.getSteps(7).size());
+        assertEquals(RECIPE_COUNT, recipeDao.getRecipeListItemsWithIngredient("huevos", RECIPE_COUNT + 1).size());
+    }
+
+    @Test
+    public void ingredientLookup_readsOnlyIndices() {
+        String plan = explain("SELECT id, title, resume, photo, thumbnail, modifiedAt FROM recipes "
+                + "WHERE id IN (SELECT recipeId FROM ingredients WHERE name >= 'harina' AND name < 'harinb') "
+                + "ORDER BY id LIMIT 20");
+
+        assertTrue(plan, plan.contains("USING COVERING INDEX index_ingredients_name_recipeId"));
+        for (String step : plan.split("\n")) {
+            assertFalse("Full scan: " + plan, step.startsWith("SCAN") && !step.contains("USING"));
+        }
+    }
+
+    private List<RecipeListItem> search(String text) {
+        String query = RecipeSearchQuery.toMatchQuery(text);
+        return recipeDao.searchRecipes(query, RecipeSearchQuery.toTitleQuery(query), RECIPE_COUNT, 0);
+    }
+
+    private static List<String> texts(List<Ingredient> ingredients) {
+        List<String> texts = new ArrayList<>();
+        for (Ingredient ingredient : ingredients) {
+            texts.add(ingredient.getText());
+        }
+        return texts;
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private String explain(String sql) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.getOpenHelper().getReadableDatabase().query("EXPLAIN QUERY PLAN " + sql)) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,127 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Throughput of the {@link RecipeDao} operations used by the app, on an in-memory database
+ * with 1k, 10k and 100k recipes.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class RecipeDaoBenchmark {
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "rows={0}")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{1_000}, {10_000}, {100_000}});
+    }
+
+    private final int rows;
+    private final int iterations;
+    private final BenchmarkRecorder recorder;
+
+    private AppDatabase database;
+    private RecipeDao recipeDao;
+
+    public RecipeDaoBenchmark(int rows) {
+        this.rows = rows;
+        // Keeps every benchmark in the order of seconds
+        this.iterations = rows >= 100_000 ? 3 : 10;
+        this.recorder = new BenchmarkRecorder("RecipeDaoBenchmark-" + rows);
+    }
+
+    @Before
+    public void setUp() {
+        database = RecipeFixtures.inMemoryDatabase();
+        recipeDao = database.recipeDao();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.close();
+        recorder.write();
+    }
+
+    @Test
+    public void insert() throws Exception {
+        recorder.measure("insert", "rows=" + rows, 1, iterations,
+                database::clearAllTables,
+                () -> RecipeFixtures.populate(database, rows));
+        assertEquals(rows, recipeDao.getRecipeCount());
+    }
+
+    @Test
+    public void queryAllPages() throws Exception {
+        RecipeFixtures.populate(database, rows);
+        recorder.measure("queryAllPages", "rows=" + rows + ",pageSize=" + RecipePager.PAGE_SIZE, 1, iterations,
+                null,
+                () -> {
+                    int afterId = 0;
+                    int read = 0;
+                    List<RecipeListItem> page;
+                    do {
+                        page = recipeDao.getRecipeListItemsAfter(afterId, RecipePager.PAGE_SIZE);
+                        if (!page.isEmpty()) {
+                            afterId = page.get(page.size() - 1).getId();
+                        }
+                        read += page.size();
+                    } while (page.size() == RecipePager.PAGE_SIZE);
+                    assertEquals(rows, read);
+                });
+    }
+
+    @Test
+    public void queryFirstPage() throws Exception {
+        RecipeFixtures.populate(database, rows);
+        recorder.measure("queryFirstPage", "rows=" + rows, 5, iterations * 10,
+                null,
+                () -> recipeDao.getRecipeListItemsAfter(0, RecipePager.PAGE_SIZE));
+    }
+
+    @Test
+    public void queryById() throws Exception {
+        RecipeFixtures.populate(database, rows);
+        int[] id = {0};
+        recorder.measure("queryById", "rows=" + rows, 5, iterations * 10,
+                null,
+                () -> assertNotNull(recipeDao.getRecipeById(id[0]++ % rows + 1)));
+    }
+
+    @Test
+    public void search() throws Exception {
+        RecipeFixtures.populate(database, rows);
+        String query = RecipeSearchQuery.toMatchQuery("tarta");
+        recorder.measure("search", "rows=" + rows, 2, iterations * 3,
+                null,
+                () -> recipeDao.searchRecipes(query, RecipeSearchQuery.toTitleQuery(query), RecipePager.PAGE_SIZE, 0));
+    }
+
+    @Test
+    public void deleteAll() throws Exception {
+        List<Integer> ids = new ArrayList<>(rows);
+        recorder.measure("deleteAll", "rows=" + rows, 1, iterations,
+                () -> {
+                    database.clearAllTables();
+                    RecipeFixtures.populate(database, rows);
+                    ids.clear();
+                    try (Cursor cursor = recipeDao.getRecipesCursor()) {
+                        int idColumn = cursor.getColumnIndexOrThrow("id");
+                        while (cursor.moveToNext()) {
+                            ids.add(cursor.getInt(idColumn));
+                        }
+                    }
+                },
+                () -> assertEquals(rows, recipeDao.deleteRecipesByIds(ids)));
+    }
+}
@@ -0,0 +1,55 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class RecipeDetailsParserTest {
+
+    @Test
+    public void parse_splitsIngredientsAndSteps() {
+        RecipeDetailsParser.Content content = RecipeDetailsParser.parse("7\nIngredientes:\n- 500g de harina\n- 2 huevos\n\n"
+                + "Instrucciones:\n1. Mezcla todos los ingredientes\ny amasa bien.\n2. Hornea 30 minutos.\n");
+
+        assertEquals(Arrays.asList("500g de harina", "2 huevos"), content.ingredients);
+        assertEquals(Arrays.asList("Mezcla todos los ingredientes y amasa bien.", "Hornea 30 minutos."), content.steps);
+    }
+
+    @Test
+    public void parse_acceptsOtherHeadersAndMarkers() {
+        RecipeDetailsParser.Content content = RecipeDetailsParser.parse("INGREDIENTS:\n* Sal\n• Aceite\n"
+                + "Preparación:\n1) Calienta el aceite.\n\nAñade la sal.");
+
+        assertEquals(Arrays.asList("Sal", "Aceite"), content.ingredients);
+        assertEquals(Arrays.asList("Calienta el aceite.", "Añade la sal."), content.steps);
+    }
+
+    @Test
+    public void parse_keepsTextWithoutHeadersAsOneStep() {
+        RecipeDetailsParser.Content content = RecipeDetailsParser.parse("  Detalles de la receta 1\n");
+
+        assertTrue(content.ingredients.isEmpty());
+        assertEquals(Collections.singletonList("Detalles de la receta 1"), content.steps);
+        assertTrue(RecipeDetailsParser.parse(null).steps.isEmpty());
+    }
+
+    @Test
+    public void ingredientName_dropsQuantityUnitAndNotes() {
+        assertEquals("harina", RecipeDetailsParser.ingredientName("500g de harina"));
+        assertEquals("harina", RecipeDetailsParser.ingredientName("500 g. de Harina (de trigo)"));
+        assertEquals("huevos", RecipeDetailsParser.ingredientName("2 Huevos, batidos"));
+        assertEquals("aceite de oliva", RecipeDetailsParser.ingredientName("3 cucharadas de aceite de oliva"));
+        assertEquals("limones", RecipeDetailsParser.ingredientName("2 limones"));
+        assertEquals("sal", RecipeDetailsParser.ingredientName("Sal al gusto"));
+        assertEquals("1/2", RecipeDetailsParser.ingredientName("1/2"));
+    }
+
+    @Test
+    public void normalize_ignoresCaseAccentsAndSpaces() {
+        assertEquals("limon", RecipeDetailsParser.normalize(" Limón "));
+        assertEquals("pina colada", RecipeDetailsParser.normalize("Piña\tcolada"));
+    }
+}
@@ -0,0 +1,97 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Databases and synthetic recipes shared by the tests and the benchmarks.
+ */
+final class RecipeFixtures {
+
+    private static final String DETAILS_FILLER = "Ingredientes:\n- 500g de harina\n- 2 huevos\n\n"
+            + "Instrucciones:\n1. Mezcla todos los ingredientes en un bol grande y amasa bien.\n"
+            + "2. Hornea durante 30 minutos a 180 grados hasta que esté dorado.\n";
+
+    private static final String[] TITLE_WORDS = {
+            "Tarta", "Ensalada", "Sopa", "Pollo", "Albóndigas", "Pastel", "Crema", "Arroz"
+    };
+
+    private RecipeFixtures() {
+    }
+
+    /**
+     * In-memory database with the schema of the app, usable from the test thread.
+     */
+    static AppDatabase inMemoryDatabase() {
+        Context context = ApplicationProvider.getApplicationContext();
+        return Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    /**
+     * Returns the recipe number {@code index} of the synthetic catalog (id 0, to be inserted).
+     */
+    static Recipe recipe(int index) {
+        Recipe.Builder recipe = new Recipe.Builder()
+                .setTitle(TITLE_WORDS[index % TITLE_WORDS.length] + " " + index)
+                .setResume("Resumen de la receta " + index)
+                .setDetails(index + "\n" + DETAILS_FILLER);
+        if (index % 3 != 0) {
+            recipe.setPhoto("content://photos/" + index + ".jpg");
+        }
+        return recipe.build();
+    }
+
+    static List<Recipe> recipes(int count) {
+        List<Recipe> recipes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            recipes.add(recipe(i));
+        }
+        return recipes;
+    }
+
+    /**
+     * Generates the synthetic recipes one at a time, without keeping them.
+     */
+    static Iterator<Recipe> recipeIterator(int count) {
+        return new Iterator<Recipe>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public Recipe next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return recipe(next++);
+            }
+        };
+    }
+
+    /**
+     * Throws if the full-text index doesn't match the recipes, with the integrity check of FTS4.
+     */
+    static void assertSearchIndexIntact(AppDatabase database) {
+        database.getOpenHelper().getWritableDatabase()
+                .execSQL("INSERT INTO recipes_fts(recipes_fts) VALUES('integrity-check')");
+    }
+
+    /**
+     * Fills the database with {@code count} synthetic recipes.
+     */
+    static void populate(AppDatabase database, int count) {
+        new RecipeImporter(database).importRecipes(recipeIterator(count), null);
+    }
+}
@@ -0,0 +1,170 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip of a catalog through {@link RecipeBackup}: exported from a database with
+ * {@link RecipeDao#getRecipesCursor()} and {@link RecipeJsonWriter}, and imported into an empty
+ * one with {@link RecipeJsonReader} and {@link RecipeImporter}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipeJsonRoundTripTest {
+
+    // Several chunks of the importer, the last one incomplete
+    private static final int RECIPE_COUNT = 2 * RecipeImporter.CHUNK_SIZE + 123;
+
+    private static final int PHOTO_COUNT = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AppDatabase source;
+    private AppDatabase target;
+    private File targetPhotos;
+
+    @Before
+    public void setUp() {
+        source = RecipeFixtures.inMemoryDatabase();
+        target = RecipeFixtures.inMemoryDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void exportAndImport_keepsIdsPhotosAndContent() throws IOException {
+        List<String> photos = new ArrayList<>();
+        PhotoStore sourceStore = new PhotoStore(folder.newFolder("source"), file -> Uri.fromFile(file).toString());
+        for (int i = 0; i < PHOTO_COUNT; i++) {
+            photos.add(sourceStore.add(newPhoto("JPEG_" + i + ".jpg", i)).uri);
+        }
+        new RecipeImporter(source).importRecipes(recipes(photos), null);
+
+        File backupDir = folder.newFolder("backup");
+        assertEquals(RECIPE_COUNT, backup(source, null).exportTo(backupDir));
+        // Every photo is copied once, however many recipes share it
+        assertEquals(PHOTO_COUNT, new File(backupDir, RecipeBackup.PHOTOS_DIR).list().length);
+
+        targetPhotos = folder.newFolder("target");
+        PhotoStore targetStore = new PhotoStore(targetPhotos, file -> Uri.fromFile(file).toString());
+        assertEquals(RECIPE_COUNT, backup(target, targetStore).importFrom(backupDir, null));
+
+        RecipeDao sourceDao = source.recipeDao();
+        RecipeDao targetDao = target.recipeDao();
+        int compared = 0;
+        try (Cursor expected = sourceDao.getRecipesCursor(); Cursor actual = targetDao.getRecipesCursor()) {
+            while (expected.moveToNext()) {
+                assertTrue(actual.moveToNext());
+                int id = getInt(expected, "id");
+                // An empty database gives the recipes the same ids, in the same order
+                assertEquals(id, getInt(actual, "id"));
+                for (String column : new String[]{"title", "resume", "details"}) {
+                    assertEquals(column + " of " + id, getString(expected, column), getString(actual, column));
+                }
+                assertSamePhoto(getString(expected, "photo"), getString(actual, "photo"));
+                assertSameContent(sourceDao, targetDao, id);
+                compared++;
+            }
+            assertFalse(actual.moveToNext());
+        }
+        assertEquals(RECIPE_COUNT, compared);
+        assertEquals(PHOTO_COUNT, targetPhotos.list().length);
+        RecipeFixtures.assertSearchIndexIntact(target);
+    }
+
+    private RecipeBackup backup(AppDatabase database, PhotoStore photoStore) {
+        return new RecipeBackup(ApplicationProvider.getApplicationContext(), database, photoStore);
+    }
+
+    /**
+     * The synthetic recipes, with every fourth one without a photo and the others sharing the given ones.
+     */
+    private static Iterator<Recipe> recipes(List<String> photos) {
+        Iterator<Recipe> recipes = RecipeFixtures.recipeIterator(RECIPE_COUNT);
+        return new Iterator<Recipe>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return recipes.hasNext();
+            }
+
+            @Override
+            public Recipe next() {
+                int index = next++;
+                String photo = index % (photos.size() + 1) == 0 ? null : photos.get(index % (photos.size() + 1) - 1);
+                return recipes.next().toBuilder().setPhoto(photo).build();
+            }
+        };
+    }
+
+    private void assertSamePhoto(String expected, String actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        // The store names the photos after their bytes
+        String name = Uri.parse(expected).getLastPathSegment();
+        assertEquals(name, Uri.parse(actual).getLastPathSegment());
+        assertTrue(new File(targetPhotos, name).isFile());
+    }
+
+    private static void assertSameContent(RecipeDao expected, RecipeDao actual, int recipeId) {
+        List<Ingredient> expectedIngredients = expected.getIngredients(recipeId);
+        List<Ingredient> actualIngredients = actual.getIngredients(recipeId);
+        assertFalse(expectedIngredients.isEmpty());
+        assertEquals(expectedIngredients.size(), actualIngredients.size());
+        for (int i = 0; i < expectedIngredients.size(); i++) {
+            assertEquals(expectedIngredients.get(i).getText(), actualIngredients.get(i).getText());
+        }
+        List<Step> expectedSteps = expected.getSteps(recipeId);
+        List<Step> actualSteps = actual.getSteps(recipeId);
+        assertFalse(expectedSteps.isEmpty());
+        assertEquals(expectedSteps.size(), actualSteps.size());
+        for (int i = 0; i < expectedSteps.size(); i++) {
+            assertEquals(expectedSteps.get(i).getText(), actualSteps.get(i).getText());
+        }
+    }
+
+    private File newPhoto(String name, int content) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < 1000; i++) {
+                out.write(content);
+            }
+        }
+        return file;
+    }
+
+    private static int getInt(Cursor cursor, String column) {
+        return cursor.getInt(cursor.getColumnIndexOrThrow(column));
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndexOrThrow(column));
+    }
+}
@@ -0,0 +1,220 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteProgram;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every sort mode and filter of {@link RecipeListQuery} is read through an index, and paging
+ * with its keyset queries returns the same rows, in the same order, as sorting the whole table.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipeListQueryTest {
+
+    private static final int RECIPE_COUNT = 500;
+    private static final int PAGE_SIZE = 37;
+
+    private AppDatabase database;
+    private RecipeDao recipeDao;
+
+    @Before
+    public void setUp() {
+        database = RecipeFixtures.inMemoryDatabase();
+        recipeDao = database.recipeDao();
+        List<Recipe> recipes = RecipeFixtures.recipes(RECIPE_COUNT);
+        for (int i = 0; i < recipes.size(); i++) {
+            // Repeated modification dates, to check the ties are broken by id
+            recipes.set(i, recipes.get(i).toBuilder().setModifiedAt(i / 3).build());
+        }
+        recipeDao.insertRecipes(recipes);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void queries_neverScanTheWholeTable() {
+        RecipeListItem last = recipeDao.getRecipeListItems(RecipeListQuery.DEFAULT.firstPage(1)).get(0);
+        for (RecipeListQuery query : allQueries()) {
+            assertUsesIndex(query, query.firstPage(PAGE_SIZE));
+            assertUsesIndex(query, query.pageAfter(last, PAGE_SIZE));
+            assertUsesIndex(query, query.pageUpTo(last, PAGE_SIZE));
+        }
+    }
+
+    @Test
+    public void unfilteredQueries_areSortedByTheIndex() {
+        RecipeListItem last = recipeDao.getRecipeListItems(RecipeListQuery.DEFAULT.firstPage(1)).get(0);
+        for (RecipeListQuery.SortMode sortMode : RecipeListQuery.SortMode.values()) {
+            RecipeListQuery query = RecipeListQuery.DEFAULT.withSortMode(sortMode);
+            for (SupportSQLiteQuery sql : new SupportSQLiteQuery[]{
+                    query.firstPage(PAGE_SIZE), query.pageAfter(last, PAGE_SIZE), query.pageUpTo(last, PAGE_SIZE)}) {
+                String plan = explain(sql);
+                assertFalse(sortMode + " sorts in a temporary b-tree: " + plan, plan.contains("TEMP B-TREE"));
+            }
+        }
+    }
+
+    @Test
+    public void pages_matchTheWholeTableSorted() {
+        for (RecipeListQuery query : allQueries()) {
+            List<RecipeListItem> paged = new ArrayList<>();
+            List<RecipeListItem> page = recipeDao.getRecipeListItems(query.firstPage(PAGE_SIZE));
+            while (!page.isEmpty()) {
+                paged.addAll(page);
+                page = recipeDao.getRecipeListItems(query.pageAfter(page.get(page.size() - 1), PAGE_SIZE));
+            }
+
+            List<RecipeListItem> expected = new ArrayList<>();
+            for (RecipeListItem recipe : recipeDao.getRecipeListItems(new SimpleSQLiteQuery(
+                    "SELECT id, title, resume, photo, thumbnail, modifiedAt FROM recipes"))) {
+                if (matches(query, recipe)) {
+                    expected.add(recipe);
+                }
+            }
+            expected.sort(comparator(query.getSortMode()));
+            assertEquals(query.getSortMode() + " " + query.isOnlyWithPhoto() + " " + query.getTitlePrefix(),
+                    ids(expected), ids(paged));
+
+            if (!paged.isEmpty()) {
+                int middle = paged.size() / 2;
+                List<RecipeListItem> before = new ArrayList<>(paged.subList(Math.max(0, middle + 1 - PAGE_SIZE), middle + 1));
+                Collections.reverse(before);
+                assertEquals(ids(before),
+                        ids(recipeDao.getRecipeListItems(query.pageUpTo(paged.get(middle), PAGE_SIZE))));
+            }
+        }
+    }
+
+    @Test
+    public void titleOrder_pagesThroughUntitledRecipes() {
+        // Rows left untitled by older versions, until EMPTY_TITLES_BACKFILL gives them an empty title
+        int untitled = 5;
+        for (int i = 0; i < untitled; i++) {
+            database.getOpenHelper().getWritableDatabase()
+                    .execSQL("INSERT INTO recipes (title, resume, modifiedAt) VALUES (NULL, 'Sin título', 0)");
+        }
+        RecipeListQuery query = RecipeListQuery.DEFAULT.withSortMode(RecipeListQuery.SortMode.TITLE);
+
+        // Small pages, so some of them continue from an untitled recipe
+        List<RecipeListItem> paged = new ArrayList<>();
+        List<RecipeListItem> page = recipeDao.getRecipeListItems(query.firstPage(2));
+        while (!page.isEmpty()) {
+            paged.addAll(page);
+            page = recipeDao.getRecipeListItems(query.pageAfter(page.get(page.size() - 1), 2));
+        }
+
+        assertEquals(RECIPE_COUNT + untitled, paged.size());
+        for (int i = 0; i < untitled; i++) {
+            assertNull(paged.get(i).getTitle());
+        }
+        assertNotNull(paged.get(untitled).getTitle());
+        List<RecipeListItem> before = new ArrayList<>(paged.subList(0, 4));
+        Collections.reverse(before);
+        assertEquals(ids(before), ids(recipeDao.getRecipeListItems(query.pageUpTo(paged.get(3), PAGE_SIZE))));
+    }
+
+    @Test
+    public void untitledRecipe_isSavedWithAnEmptyTitle() {
+        long id = recipeDao.insertRecipe(new Recipe.Builder().setResume("Sin título").build());
+
+        assertEquals("", recipeDao.getRecipeById((int) id).getTitle());
+    }
+
+    private static List<RecipeListQuery> allQueries() {
+        List<RecipeListQuery> queries = new ArrayList<>();
+        for (RecipeListQuery.SortMode sortMode : RecipeListQuery.SortMode.values()) {
+            for (boolean onlyWithPhoto : new boolean[]{false, true}) {
+                for (String prefix : new String[]{null, "Tarta"}) {
+                    queries.add(new RecipeListQuery(sortMode, onlyWithPhoto, prefix));
+                }
+            }
+        }
+        return queries;
+    }
+
+    private static boolean matches(RecipeListQuery query, RecipeListItem recipe) {
+        return (!query.isOnlyWithPhoto() || recipe.getPhoto() != null)
+                && (query.getTitlePrefix() == null || recipe.getTitle().startsWith(query.getTitlePrefix()));
+    }
+
+    private static Comparator<RecipeListItem> comparator(RecipeListQuery.SortMode sortMode) {
+        Comparator<RecipeListItem> byId = Comparator.comparingInt(RecipeListItem::getId);
+        switch (sortMode) {
+            case NEWEST:
+                return byId.reversed();
+            case TITLE:
+                return Comparator.comparing(RecipeListItem::getTitle).thenComparing(byId);
+            case MODIFIED:
+                return Comparator.comparingLong(RecipeListItem::getModifiedAt).thenComparing(byId).reversed();
+            default:
+                return byId;
+        }
+    }
+
+    private static List<Integer> ids(List<RecipeListItem> recipes) {
+        List<Integer> ids = new ArrayList<>(recipes.size());
+        for (RecipeListItem recipe : recipes) {
+            ids.add(recipe.getId());
+        }
+        return ids;
+    }
+
+    private void assertUsesIndex(RecipeListQuery query, SupportSQLiteQuery sql) {
+        String plan = explain(sql);
+        for (String step : plan.split("\n")) {
+            if (step.startsWith("SCAN") && !step.contains("USING")) {
+                fail(query.getSortMode() + " " + query.isOnlyWithPhoto() + " " + query.getTitlePrefix()
+                        + " scans the whole table: " + sql.getSql() + "\n" + plan);
+            }
+        }
+    }
+
+    /**
+     * Returns the steps of the plan of the query, one per line.
+     */
+    private String explain(SupportSQLiteQuery query) {
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = database.getOpenHelper().getReadableDatabase().query(new SupportSQLiteQuery() {
+            @NonNull
+            @Override
+            public String getSql() {
+                return "EXPLAIN QUERY PLAN " + query.getSql();
+            }
+
+            @Override
+            public void bindTo(@NonNull SupportSQLiteProgram statement) {
+                query.bindTo(statement);
+            }
+
+            @Override
+            public int getArgCount() {
+                return query.getArgCount();
+            }
+        })) {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
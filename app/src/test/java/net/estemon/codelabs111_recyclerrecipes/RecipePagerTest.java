@@ -0,0 +1,191 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.os.Looper;
+
+import androidx.lifecycle.Observer;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Writes to the recipes table are reflected by {@link RecipePager} without reloading by hand, a
+ * burst of writes is followed by a single query of the pages on screen, and the pages far from
+ * the screen are dropped and loaded again.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipePagerTest {
+
+    // Runs the queries of Room and of the pager when the test decides, to control the interleaving
+    private final Queue<Runnable> queryTasks = new ArrayDeque<>();
+    private final Executor queryExecutor = queryTasks::add;
+
+    private final AtomicInteger listQueries = new AtomicInteger();
+    private final List<List<RecipeListItem>> emitted = new ArrayList<>();
+    private final Observer<List<RecipeListItem>> observer = emitted::add;
+
+    private AppDatabase database;
+    private RecipeDao recipeDao;
+    private RecipePager pager;
+
+    @Before
+    public void setUp() {
+        database = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), AppDatabase.class)
+                .allowMainThreadQueries()
+                .setQueryExecutor(queryExecutor)
+                .setTransactionExecutor(Runnable::run)
+                .setQueryCallback((sql, args) -> {
+                    if (sql.startsWith("SELECT id, title")) {
+                        listQueries.incrementAndGet();
+                    }
+                }, Runnable::run)
+                .build();
+        recipeDao = database.recipeDao();
+        pager = new RecipePager(recipeDao, database.getInvalidationTracker(), queryExecutor);
+        pager.getRecipes().observeForever(observer);
+    }
+
+    @After
+    public void tearDown() {
+        pager.getRecipes().removeObserver(observer);
+        database.close();
+    }
+
+    @Test
+    public void writes_areObservedWithoutReloading() {
+        recipeDao.insertRecipes(RecipeFixtures.recipes(3));
+        pager.loadNextPage();
+        runAll();
+        assertEquals(3, lastEmitted().size());
+
+        Recipe modified = recipeDao.getRecipeById(lastEmitted().get(1).getId());
+        recipeDao.updateRecipe(modified.toBuilder().setTitle("Modificada").build());
+        recipeDao.deleteRecipeById(lastEmitted().get(0).getId());
+        runAll();
+
+        assertEquals(2, lastEmitted().size());
+        assertEquals("Modificada", lastEmitted().get(0).getTitle());
+    }
+
+    @Test
+    public void burstOfWrites_isCoalescedIntoOneQuery() {
+        recipeDao.insertRecipes(RecipeFixtures.recipes(3));
+        pager.loadNextPage();
+        runAll();
+        listQueries.set(0);
+
+        for (int i = 0; i < 10; i++) {
+            Recipe recipe = RecipeFixtures.recipe(100 + i);
+            recipeDao.insertRecipe(recipe);
+        }
+        runAll();
+
+        assertEquals(1, listQueries.get());
+        // The page on screen is queried again whole, with the new recipes after the loaded ones
+        assertEquals(13, lastEmitted().size());
+    }
+
+    @Test
+    public void emptyTable_showsRecipesInsertedLater() {
+        pager.loadNextPage();
+        runAll();
+
+        recipeDao.insertRecipe(RecipeFixtures.recipe(1));
+        runAll();
+
+        assertEquals(1, lastEmitted().size());
+    }
+
+    @Test
+    public void writes_requeryOnlyThePagesAroundTheScreen() {
+        recipeDao.insertRecipes(RecipeFixtures.recipes(1000));
+        pager.loadNextPage();
+        runAll();
+        scrollToTheEnd(10);
+        int middle = lastEmitted().size() / 2;
+        pager.onScrolled(middle, middle + 9);
+        runAll();
+        listQueries.set(0);
+
+        RecipeListItem visible = lastEmitted().get(middle + 5);
+        recipeDao.updateRecipe(recipeDao.getRecipeById(visible.getId()).toBuilder().setTitle("Modificada").build());
+        runAll();
+
+        assertEquals(1, listQueries.get());
+        List<RecipeListItem> shown = lastEmitted();
+        assertTrue(shown.size() + " recipes queried again", shown.size() <= 2 * RecipePager.PAGE_SIZE);
+        assertTrue(shown.stream().anyMatch(recipe ->
+                recipe.getId() == visible.getId() && "Modificada".equals(recipe.getTitle())));
+    }
+
+    @Test
+    public void farPages_areDroppedAndLoadedAgain() {
+        recipeDao.insertRecipes(RecipeFixtures.recipes(1000));
+        pager.loadNextPage();
+        runAll();
+        int firstId = lastEmitted().get(0).getId();
+
+        scrollToTheEnd(10);
+        assertTrue(lastEmitted().size() <= RecipePager.MAX_LOADED);
+        assertNotEquals(firstId, lastEmitted().get(0).getId());
+
+        for (int i = 0; i < 10; i++) {
+            pager.onScrolled(0, 9);
+            runAll();
+        }
+        assertTrue(lastEmitted().size() <= RecipePager.MAX_LOADED);
+        assertEquals(firstId, lastEmitted().get(0).getId());
+        assertEquals(ids(recipeDao.getRecipeListItems(RecipeListQuery.DEFAULT.firstPage(lastEmitted().size()))),
+                ids(lastEmitted()));
+    }
+
+    /**
+     * Scrolls to the last loaded rows as many times as {@code times}, loading a page every time.
+     */
+    private void scrollToTheEnd(int times) {
+        for (int i = 0; i < times; i++) {
+            int size = lastEmitted().size();
+            pager.onScrolled(size - 10, size - 1);
+            runAll();
+        }
+    }
+
+    private static List<Integer> ids(List<RecipeListItem> recipes) {
+        List<Integer> ids = new ArrayList<>(recipes.size());
+        for (RecipeListItem recipe : recipes) {
+            ids.add(recipe.getId());
+        }
+        return ids;
+    }
+
+    private List<RecipeListItem> lastEmitted() {
+        return emitted.get(emitted.size() - 1);
+    }
+
+    /**
+     * Runs the pending queries and main thread messages until there are none left.
+     */
+    private void runAll() {
+        do {
+            Runnable task;
+            while ((task = queryTasks.poll()) != null) {
+                task.run();
+            }
+            shadowOf(Looper.getMainLooper()).idle();
+        } while (!queryTasks.isEmpty());
+    }
+}
@@ -0,0 +1,130 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.database.Cursor;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of refreshing the list after a change to one recipe.
+ * <p>
+ * The full refresh is what {@code loadRecipes} used to do: read every column of every recipe and
+ * rebind the whole list. The app has no query for that anymore, so the benchmark reads the whole
+ * table itself. The incremental one is what {@link RecipePager#refresh()} does now: reload only
+ * the pages of the loaded window and diff them with the rows on screen.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecipeRefreshBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    // Four pages loaded, as after scrolling down a bit
+    private static final int WINDOW = 4 * RecipePager.PAGE_SIZE;
+
+    private static final int ITERATIONS = 20;
+
+    private final BenchmarkRecorder recorder = new BenchmarkRecorder("RecipeRefreshBenchmark");
+
+    private AppDatabase database;
+    private RecipeDao recipeDao;
+    private int modified;
+
+    @Before
+    public void setUp() {
+        database = RecipeFixtures.inMemoryDatabase();
+        recipeDao = database.recipeDao();
+        RecipeFixtures.populate(database, ROWS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.close();
+        recorder.write();
+    }
+
+    @Test
+    public void fullRefresh() throws Exception {
+        recorder.measure("fullRefresh", "rows=" + ROWS, 2, ITERATIONS,
+                this::modifyOneRecipe,
+                this::readAllRecipes);
+    }
+
+    @Test
+    public void incrementalRefresh() throws Exception {
+        List<RecipeListItem> shown = recipeDao.getRecipeListItems(RecipeListQuery.DEFAULT.firstPage(WINDOW));
+        recorder.measure("incrementalRefresh", "rows=" + ROWS + ",window=" + WINDOW, 2, ITERATIONS,
+                this::modifyOneRecipe,
+                () -> {
+                    List<RecipeListItem> window = recipeDao.getRecipeListItems(RecipeListQuery.DEFAULT.firstPage(WINDOW));
+                    DiffUtil.calculateDiff(new ListDiff(shown, window));
+                });
+    }
+
+    /**
+     * Every column of every recipe, as the old full refresh read them.
+     */
+    private List<Recipe> readAllRecipes() {
+        List<Recipe> recipes = new ArrayList<>();
+        try (Cursor cursor = recipeDao.getRecipesCursor()) {
+            while (cursor.moveToNext()) {
+                recipes.add(new Recipe(
+                        cursor.getInt(cursor.getColumnIndexOrThrow("id")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("title")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("resume")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("details")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("photo")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("thumbnail")),
+                        cursor.getString(cursor.getColumnIndexOrThrow("detailPhoto")),
+                        cursor.getLong(cursor.getColumnIndexOrThrow("modifiedAt"))));
+            }
+        }
+        return recipes;
+    }
+
+    private void modifyOneRecipe() {
+        Recipe recipe = recipeDao.getRecipeById(modified++ % WINDOW + 1);
+        recipeDao.updateRecipe(recipe.toBuilder().setTitle(recipe.getTitle() + "*").build());
+    }
+
+    /**
+     * Same comparison than the {@link RecipeAdapter} differ, run synchronously.
+     */
+    private static class ListDiff extends DiffUtil.Callback {
+
+        private final List<RecipeListItem> oldList;
+        private final List<RecipeListItem> newList;
+
+        ListDiff(List<RecipeListItem> oldList, List<RecipeListItem> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return RecipeAdapter.DIFF_CALLBACK.areItemsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return RecipeAdapter.DIFF_CALLBACK.areContentsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+        }
+    }
+}
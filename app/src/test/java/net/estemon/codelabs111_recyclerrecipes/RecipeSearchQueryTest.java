@@ -0,0 +1,41 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecipeSearchQueryTest {
+
+    @Test
+    public void toMatchQuery_prefixesEveryWord() {
+        assertEquals("tarta* de* queso*", RecipeSearchQuery.toMatchQuery("Tarta de  Queso"));
+    }
+
+    @Test
+    public void toMatchQuery_dropsQuerySyntax() {
+        assertEquals("pollo* curry* or*", RecipeSearchQuery.toMatchQuery("\"pollo\" -curry* OR:("));
+    }
+
+    @Test
+    public void toMatchQuery_keepsAccentsAndDigits() {
+        assertEquals("piña* 2*", RecipeSearchQuery.toMatchQuery("piña 2"));
+    }
+
+    @Test
+    public void toMatchQuery_lowersNonAsciiLetters() {
+        // The diacritics are removed by the tokenizer of the index, in the query too
+        assertEquals("limón*", RecipeSearchQuery.toMatchQuery("LIMÓN"));
+    }
+
+    @Test
+    public void toMatchQuery_withoutWords_returnsNull() {
+        assertNull(RecipeSearchQuery.toMatchQuery("  *-\" "));
+        assertNull(RecipeSearchQuery.toMatchQuery(""));
+        assertNull(RecipeSearchQuery.toMatchQuery(null));
+    }
+
+    @Test
+    public void toTitleQuery_restrictsEveryWordToTitle() {
+        assertEquals("title:tarta* title:queso*", RecipeSearchQuery.toTitleQuery("tarta* queso*"));
+    }
+}
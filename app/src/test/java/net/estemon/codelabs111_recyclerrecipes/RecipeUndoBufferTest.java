@@ -0,0 +1,67 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecipeUndoBufferTest {
+
+    private static final long WINDOW = 8000;
+
+    private final List<Recipe> deleted = Collections.singletonList(new Recipe.Builder().build());
+
+    @Test
+    public void take_returnsTheRecipesOnlyOnce() {
+        RecipeUndoBuffer buffer = new RecipeUndoBuffer(WINDOW);
+        buffer.put(deleted, 1000);
+
+        assertSame(deleted, buffer.take(1000 + WINDOW - 1));
+        assertNull(buffer.take(1000 + WINDOW - 1));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void take_afterTheWindow_returnsNothing() {
+        RecipeUndoBuffer buffer = new RecipeUndoBuffer(WINDOW);
+        buffer.put(deleted, 1000);
+
+        assertNull(buffer.take(1000 + WINDOW));
+    }
+
+    @Test
+    public void take_afterTheWindow_leavesTheRecipesToRelease() {
+        RecipeUndoBuffer buffer = new RecipeUndoBuffer(WINDOW);
+        buffer.put(deleted, 1000);
+
+        assertNull(buffer.take(1000 + WINDOW + 1));
+        assertSame(deleted, buffer.expire(1000 + WINDOW + 2));
+    }
+
+    @Test
+    public void put_replacesThePreviousDeletion() {
+        RecipeUndoBuffer buffer = new RecipeUndoBuffer(WINDOW);
+        assertNull(buffer.put(deleted, 1000));
+        List<Recipe> last = Collections.singletonList(new Recipe.Builder().build());
+
+        // Handed back to release it: the expiry of its window won't find it anymore
+        assertSame(deleted, buffer.put(last, 2000));
+        assertNull(buffer.expire(1000 + WINDOW));
+
+        assertSame(last, buffer.take(2000 + WINDOW - 1));
+    }
+
+    @Test
+    public void expire_keepsTheRecipesUntilTheEndOfTheWindow() {
+        RecipeUndoBuffer buffer = new RecipeUndoBuffer(WINDOW);
+        buffer.put(deleted, 1000);
+
+        assertNull(buffer.expire(1000 + WINDOW - 1));
+        assertFalse(buffer.isEmpty());
+        assertSame(deleted, buffer.expire(1000 + WINDOW));
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.expire(2000 + WINDOW));
+    }
+}
@@ -0,0 +1,85 @@
+package net.estemon.codelabs111_recyclerrecipes;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Time from the creation of {@link MainActivity} until the first frame that shows rows of the list.
+ * <p>
+ * It covers everything on the path: inflating the screen, drawing the first (empty) frame,
+ * opening the database afterwards, querying the first page and laying out its rows. It is run on
+ * the JVM, so the absolute times are not the ones of a device, but a regression on the path
+ * (work moved back before the first frame, a slower first query...) shows up here too.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StartupBenchmark {
+
+    private static final int ROWS = 1_000;
+
+    private static final int ITERATIONS = 10;
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // One frame of the main looper clock
+    private static final Duration FRAME = Duration.ofMillis(16);
+
+    private final BenchmarkRecorder recorder = new BenchmarkRecorder("StartupBenchmark");
+
+    private ActivityController<MainActivity> controller;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        RecipeFixtures.populate(AppDatabase.getInstance(context), ROWS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        destroyActivity();
+        recorder.write();
+    }
+
+    @Test
+    public void timeToFirstListFrame() throws Exception {
+        recorder.measure("timeToFirstListFrame", "rows=" + ROWS, 2, ITERATIONS,
+                this::destroyActivity,
+                this::launchUntilListShown);
+    }
+
+    private void launchUntilListShown() throws InterruptedException {
+        controller = Robolectric.buildActivity(MainActivity.class).setup();
+        RecyclerView list = controller.get().findViewById(R.id.recycler_view);
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (list.getChildCount() == 0) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("The list was not shown after 10s");
+            }
+            // Runs the frames, and the results posted by the database threads
+            shadowOf(Looper.getMainLooper()).idleFor(FRAME);
+            Thread.sleep(1);
+        }
+    }
+
+    private void destroyActivity() {
+        if (controller != null) {
+            controller.pause().stop().destroy();
+            controller = null;
+        }
+    }
+}